@@ -0,0 +1,73 @@
+package com.fujitsu.digital.benchmarks;
+
+import com.fujitsu.digital.services.RegistrationEmailMatcher;
+import com.fujitsu.digital.utils.ConfigCache;
+import com.fujitsu.digital.utils.EmailDomainMatcher;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks registration email matching (UserServiceImpl.userEmailMatches()): the whole path as the service runs it
+ *  (normalising the address, then RegistrationEmailMatcher checking its compiled matcher is current and matching), the
+ *  compiled EmailDomainMatcher on its own, and the linear endsWith() scan it replaced, as the number of approved
+ *  domains grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailMatcherBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int matcherCount;
+
+    @Param({ "first.last@dept42.hmrc.gov.uk", "someone@example.com" })
+    public String emailAddress;
+
+    private List<String> matchers;
+    private EmailDomainMatcher emailDomainMatcher;
+    private RegistrationEmailMatcher registrationEmailMatcher;
+
+    @Setup
+    public void setup() {
+        matchers = new ArrayList<>( matcherCount);
+        for ( int i = 0; i < matcherCount; i++) {
+            matchers.add( "@dept" + i + ".hmrc.gov.uk");
+        }
+        emailDomainMatcher = EmailDomainMatcher.compile( matchers);
+
+        ConfigCache configCache = Mockito.mock( ConfigCache.class);
+        Mockito.when( configCache.regEmailMatcherList()).thenReturn( matchers);
+        registrationEmailMatcher = new RegistrationEmailMatcher();
+        registrationEmailMatcher.setConfigCache( configCache);
+        ReflectionTestUtils.setField( registrationEmailMatcher, "refreshMillis", 60000L);
+    }
+
+    @Benchmark
+    public boolean userEmailMatches() {
+        return registrationEmailMatcher.matches( emailAddress.toLowerCase().trim());
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return emailDomainMatcher.matches( emailAddress.toLowerCase().trim());
+    }
+
+    @Benchmark
+    public boolean linearScan() {
+        String normalisedEmailAddress = emailAddress.toLowerCase().trim();
+        for ( String matcher : matchers) {
+            if ( normalisedEmailAddress.endsWith( matcher)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
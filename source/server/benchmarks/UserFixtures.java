@@ -0,0 +1,52 @@
+package com.fujitsu.digital.benchmarks;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.UserPermission;
+import com.fujitsu.digital.domain.UserRole;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds realistic, fully populated users and roles for the benchmarks, without a database.
+ */
+final class UserFixtures {
+
+    private UserFixtures() {
+    }
+
+    static UserRole role( long oid, int permissionCount) {
+        List<UserPermission> permissions = new ArrayList<>( permissionCount);
+        for ( int i = 0; i < permissionCount; i++) {
+            UserPermission permission = new UserPermission();
+            permission.setOid( (long) i + 1);
+            permission.setName( "IP_PERMISSION_" + i);
+            permissions.add( permission);
+        }
+        UserRole role = new UserRole();
+        role.setOid( oid);
+        role.setName( "ROLE_" + oid);
+        role.setUpdatedDate( LocalDateTime.of( 2018, 9, 1, 12, 0));
+        role.setUserPermissionList( permissions);
+        return role;
+    }
+
+    static User user( long oid, UserRole role) {
+        User user = new User();
+        user.setOid( oid);
+        user.setUsername( "first.last" + oid + "@hmrc.gsi.gov.uk");
+        user.setPassword( "$2a$10$abcdefghijklmnopqrstuv");
+        user.setFirstName( "First" + oid);
+        user.setLastName( "Last" + oid);
+        user.setEmailAddress( user.getUsername());
+        user.setStatus( User.Status.ACTIVE);
+        user.setActive( User.USER_ACTIVE);
+        user.setSecurityLevel( User.SecurityLevel.CONFIDENTIAL);
+        user.setCreatedDate( LocalDateTime.of( 2018, 9, 1, 12, 0));
+        user.setUpdatedDate( LocalDateTime.of( 2018, 9, 2, 12, 0));
+        user.setVersion( 3L);
+        user.setUserRole( role);
+        return user;
+    }
+}
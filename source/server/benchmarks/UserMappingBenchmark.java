@@ -0,0 +1,141 @@
+package com.fujitsu.digital.benchmarks;
+
+import com.fujitsu.digital.config.CacheConfig;
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.UserRole;
+import com.fujitsu.digital.domain.dto.UserDTO;
+import com.fujitsu.digital.domain.dto.UserPermissionDTO;
+import com.fujitsu.digital.services.UserMapper;
+import com.fujitsu.digital.services.UserMapperImpl;
+import com.fujitsu.digital.services.UserRoleAuthorityCache;
+import com.fujitsu.digital.services.UserRoleLookup;
+import com.fujitsu.digital.services.UserRoleService;
+import com.fujitsu.digital.services.UserServiceImpl;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks UserServiceImpl's entity/DTO mapping and the authority building done at signin, across realistic role
+ *  sizes. Run with the GC profiler (the profile's default) to see allocation per operation alongside latency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserMappingBenchmark {
+
+    @Param({ "5", "25", "100" })
+    public int permissionCount;
+
+    private static final int PAGE_SIZE = 500;
+
+    private UserServiceImpl userService;
+    private UserMapper userMapper;
+    private UserRoleAuthorityCache userRoleAuthorityCache;
+    private User user;
+    private User otherUser;
+    private UserDTO userDTO;
+    private List<User> page;
+
+    @Setup
+    public void setup() {
+        UserRole role = UserFixtures.role( 1L, permissionCount);
+        user = UserFixtures.user( 1L, role);
+        otherUser = UserFixtures.user( 1L, UserFixtures.role( 1L, permissionCount));
+
+        // stubOnly: a recording mock keeps every invocation, which would swamp asEntity with its own garbage
+        UserRoleService userRoleService = Mockito.mock( UserRoleService.class, Mockito.withSettings().stubOnly());
+        Mockito.when( userRoleService.findEntity( role.getOid())).thenReturn( role);
+        UserRoleLookup userRoleLookup = new UserRoleLookup();
+        userRoleLookup.setUserRoleService( userRoleService);
+        userRoleLookup.setCacheManager( new ConcurrentMapCacheManager( CacheConfig.USER_ROLES));
+        userRoleAuthorityCache = new UserRoleAuthorityCache();
+        UserMapper userMapper = new UserMapperImpl();
+        userMapper.setUserRoleLookup( userRoleLookup);
+        userMapper.setUserRoleAuthorityCache( userRoleAuthorityCache);
+        userService = new UserServiceImpl();
+        userService.setUserRoleLookup( userRoleLookup);
+        userService.setUserRoleAuthorityCache( userRoleAuthorityCache);
+        userService.setUserMapper( userMapper);
+        userDTO = userService.asDTO( user);
+
+        page = new ArrayList<>( PAGE_SIZE);
+        for ( int i = 0; i < PAGE_SIZE; i++) {
+            page.add( UserFixtures.user( i + 1L, role));
+        }
+        this.userMapper = userMapper;
+    }
+
+    @Benchmark
+    public UserDTO asDTO() {
+        return userService.asDTO( user);
+    }
+
+    @Benchmark
+    public UserDTO asSummaryDTO() {
+        return userService.asSummaryDTO( user);
+    }
+
+    @Benchmark
+    public User asEntity() {
+        return userService.asEntity( userDTO);
+    }
+
+    /**
+     * A full page of the user listing, as getPage and getAll map it.
+     */
+    @Benchmark
+    public List<UserDTO> pageToDTOs() {
+        return userMapper.toDTOs( page);
+    }
+
+    /**
+     * A full page of users mapped to summaries, one asSummaryDTO() each, as bulk registration maps its results. The
+     *  summary listings and the change feed no longer map entities at all: they select straight into UserDTO.
+     */
+    @Benchmark
+    public List<UserDTO> pageToSummaryDTOs() {
+        return userMapper.toSummaryDTOs( page);
+    }
+
+    @Benchmark
+    public List<UserServiceImpl.Permission> signinAuthorities() {
+        return userRoleAuthorityCache.get( user.getUserRole()).getAuthorities();
+    }
+
+    /**
+     * The authority building signin did before UserRoleAuthorityCache, kept as a reference point.
+     */
+    @Benchmark
+    public List<UserServiceImpl.Permission> signinAuthoritiesUncached() {
+        List<UserServiceImpl.Permission> authorities = new ArrayList<>();
+        authorities.addAll( user.getUserRole().getUserPermissionList().stream().map( permission -> new UserServiceImpl.PermissionImpl( permission.getName())).collect( Collectors.toList()));
+        return authorities;
+    }
+
+    /**
+     * The permission mapping asDTO did before UserRoleAuthorityCache, kept as a reference point.
+     */
+    @Benchmark
+    public List<UserPermissionDTO> permissionDTOsUncached() {
+        return user.getUserRole().getUserPermissionList().stream().map( permission -> new UserPermissionDTO( permission.getOid(), permission.getName())).collect( Collectors.toList());
+    }
+
+    @Benchmark
+    public boolean userEquals() {
+        return user.equals( otherUser);
+    }
+
+    @Benchmark
+    public int userHashCode() {
+        return user.hashCode();
+    }
+}
@@ -0,0 +1,35 @@
+package com.fujitsu.digital.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+
+    /**
+     * Worker pool used to deliver outbox emails. Deliberately small and bounded: a slow mail relay should back up the
+     *  outbox table, not the JVM. Hand-overs to a saturated pool are rejected (TaskRejectedException), and left to the
+     *  dispatcher's next sweep: the message is still PENDING in the outbox.
+     */
+    @Bean(name = "emailExecutor")
+    public ThreadPoolTaskExecutor emailExecutor(
+            @Value("${ip.email.executor.core-size:2}") int coreSize,
+            @Value("${ip.email.executor.max-size:4}") int maxSize,
+            @Value("${ip.email.executor.queue-capacity:500}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix( "email-");
+        executor.setCorePoolSize( coreSize);
+        executor.setMaxPoolSize( maxSize);
+        executor.setQueueCapacity( queueCapacity);
+        executor.setRejectedExecutionHandler( new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown( true);
+        executor.setAwaitTerminationSeconds( 30);
+        return executor;
+    }
+}
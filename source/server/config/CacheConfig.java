@@ -0,0 +1,47 @@
+package com.fujitsu.digital.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String USERS = "users";
+    public static final String USER_ROLES = "userRoles";
+
+    /**
+     * In-process caches, each bounded in size and expiring after a fixed time as a backstop to explicit eviction.
+     *  Statistics are recorded, and published by the actuator as the "cache.gets" (hit/miss), "cache.puts" and
+     *  "cache.evictions" metrics, tagged by cache name.
+     */
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${ip.cache.users.max-size:10000}") long usersMaxSize,
+            @Value("${ip.cache.users.ttl-seconds:300}") long usersTtlSeconds,
+            @Value("${ip.cache.user-roles.max-size:200}") long userRolesMaxSize,
+            @Value("${ip.cache.user-roles.ttl-seconds:3600}") long userRolesTtlSeconds) {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches( Arrays.asList(
+                cache( USERS, usersMaxSize, usersTtlSeconds),
+                cache( USER_ROLES, userRolesMaxSize, userRolesTtlSeconds)));
+        return cacheManager;
+    }
+
+    private static CaffeineCache cache( String name, long maxSize, long ttlSeconds) {
+        return new CaffeineCache( name, Caffeine.newBuilder()
+                .maximumSize( maxSize)
+                .expireAfterWrite( ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build());
+    }
+}
@@ -0,0 +1,70 @@
+package com.fujitsu.digital.config;
+
+import com.fujitsu.digital.utils.ReadYourWrites;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read/write splitting, enabled with ip.datasource.routing.enabled=true: the primary is configured by the usual
+ *  spring.datasource.* properties, and the replicas by ip.datasource.replica.urls (comma separated), sharing the
+ *  primary's credentials and driver unless ip.datasource.replica.username/password/driver-class-name are set. All of
+ *  the pools, primary and replicas, are Hikari pools configured by spring.datasource.hikari.*, as Boot's own would be.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ip.datasource.routing.enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    private static final String HIKARI_PREFIX = "spring.datasource.hikari";
+
+    @Bean
+    @ConfigurationProperties(HIKARI_PREFIX)
+    public HikariDataSource primaryDataSource( DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type( HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            @Qualifier("primaryDataSource") HikariDataSource primary,
+            ReadYourWrites readYourWrites,
+            Environment environment,
+            @Value("${ip.datasource.replica.urls:}") String[] replicaUrls,
+            @Value("${ip.datasource.replica.username:${spring.datasource.username:}}") String replicaUsername,
+            @Value("${ip.datasource.replica.password:${spring.datasource.password:}}") String replicaPassword,
+            @Value("${ip.datasource.replica.driver-class-name:${spring.datasource.driver-class-name:}}") String replicaDriverClassName) {
+        Binder binder = Binder.get( environment);
+        List<DataSource> replicas = new ArrayList<>( replicaUrls.length);
+        for ( int i = 0; i < replicaUrls.length; i++) {
+            DataSourceBuilder<HikariDataSource> builder = DataSourceBuilder.create().type( HikariDataSource.class)
+                    .url( replicaUrls[i].trim())
+                    .username( replicaUsername)
+                    .password( replicaPassword);
+            if ( !replicaDriverClassName.isEmpty()) {
+                builder.driverClassName( replicaDriverClassName);
+            }
+            HikariDataSource replica = builder.build();
+            binder.bind( HIKARI_PREFIX, Bindable.ofInstance( replica));
+            // Keep the pools' names (and so their metrics) apart
+            if ( replica.getPoolName() != null) {
+                replica.setPoolName( replica.getPoolName() + "-replica-" + i);
+            }
+            replicas.add( replica);
+        }
+        return ReplicaRoutingDataSource.create( primary, replicas, readYourWrites);
+    }
+}
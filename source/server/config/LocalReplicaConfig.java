@@ -0,0 +1,79 @@
+package com.fujitsu.digital.config;
+
+import com.fujitsu.digital.utils.ReadYourWrites;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read/write splitting against two embedded H2 databases, standing in for a primary and a replica, for trying out
+ *  routing (and read-your-writes) locally. Activate with the "local-replica" Spring profile, and build with the
+ *  Maven profile of the same name, which adds H2.
+ *
+ * The replica is refreshed from a snapshot of the primary every ip.datasource.local-replica.lag-ms, so replication
+ *  lag is visible: a write shows up in replica reads only after the next refresh.
+ */
+@Configuration
+@Profile("local-replica")
+public class LocalReplicaConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalReplicaConfig.class);
+
+    private final EmbeddedDatabase primary = new EmbeddedDatabaseBuilder()
+            .setType( EmbeddedDatabaseType.H2).setName( "ip-primary").build();
+    private final EmbeddedDatabase replica = new EmbeddedDatabaseBuilder()
+            .setType( EmbeddedDatabaseType.H2).setName( "ip-replica").build();
+
+    @Bean
+    @Primary
+    public DataSource dataSource( ReadYourWrites readYourWrites) {
+        return ReplicaRoutingDataSource.create( primary, Collections.singletonList( replica), readYourWrites);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replica.shutdown();
+        primary.shutdown();
+    }
+
+    @Scheduled(fixedDelayString = "${ip.datasource.local-replica.lag-ms:2000}")
+    public void replicate() {
+        try ( Connection from = primary.getConnection(); Connection to = replica.getConnection()) {
+            List<String> script = new ArrayList<>();
+            try ( Statement statement = from.createStatement();
+                  ResultSet resultSet = statement.executeQuery( "SCRIPT NOPASSWORDS NOSETTINGS")) {
+                while ( resultSet.next()) {
+                    script.add( resultSet.getString( 1));
+                }
+            }
+            to.setAutoCommit( false);
+            try ( Statement statement = to.createStatement()) {
+                statement.execute( "DROP ALL OBJECTS");
+                for ( String sql : script) {
+                    statement.execute( sql);
+                }
+            }
+            to.commit();
+        }
+        catch ( SQLException e) {
+            log.warn( "replicate(); unable to refresh the local replica: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.fujitsu.digital.config;
+
+import com.fujitsu.digital.utils.ReadYourWrites;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to the replicas (round robin), and everything else to the primary. A principal who
+ *  has written within the read-your-writes window is kept on the primary, so they see their own changes, as is any
+ *  work pinned there with ReadYourWrites.onPrimary().
+ *
+ * Must be used through create(), which wraps it in a LazyConnectionDataSourceProxy: a transaction's connection is
+ *  then only fetched at its first statement, by which point the transaction's read-only flag has been set.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA_PREFIX = "replica-";
+
+    private final int replicaCount;
+    private final ReadYourWrites readYourWrites;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private ReplicaRoutingDataSource( int replicaCount, ReadYourWrites readYourWrites) {
+        this.replicaCount = replicaCount;
+        this.readYourWrites = readYourWrites;
+    }
+
+    public static DataSource create( DataSource primary, List<DataSource> replicas, ReadYourWrites readYourWrites) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put( PRIMARY, primary);
+        for ( int i = 0; i < replicas.size(); i++) {
+            targets.put( REPLICA_PREFIX + i, replicas.get( i));
+        }
+        ReplicaRoutingDataSource router = new ReplicaRoutingDataSource( replicas.size(), readYourWrites);
+        router.setTargetDataSources( targets);
+        router.setDefaultTargetDataSource( primary);
+        router.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy( router);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if ( replicaCount == 0
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || readYourWrites.isPinnedToPrimary()
+                || readYourWrites.isRecentWriter()) {
+            return PRIMARY;
+        }
+        return REPLICA_PREFIX + Math.floorMod( nextReplica.getAndIncrement(), replicaCount);
+    }
+}
@@ -0,0 +1,37 @@
+package com.fujitsu.digital.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the number of live HTTP sessions on this node (i.e. signed in and anonymous users with a session), as the
+ *  "ip.sessions.active" gauge.
+ */
+@Component
+public class SessionMetrics implements HttpSessionListener {
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder( "ip.sessions.active", activeSessions, AtomicInteger::get)
+                .description( "HTTP sessions currently live on this node")
+                .register( meterRegistry);
+    }
+
+    @Override
+    public void sessionCreated( HttpSessionEvent event) {
+        activeSessions.incrementAndGet();
+    }
+
+    @Override
+    public void sessionDestroyed( HttpSessionEvent event) {
+        activeSessions.decrementAndGet();
+    }
+}
@@ -0,0 +1,33 @@
+package com.fujitsu.digital.config;
+
+import com.fujitsu.digital.security.SessionTokenFilter;
+import com.fujitsu.digital.security.SessionTokenService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Stateless sessions, enabled with ip.session.stateless=true: signin returns a signed X-Auth-Token, and
+ *  SessionTokenFilter authenticates later requests from it.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ip.session.stateless", havingValue = "true")
+public class SessionTokenConfig {
+
+    @Bean
+    public SessionTokenFilter sessionTokenFilter( SessionTokenService sessionTokenService) {
+        return new SessionTokenFilter( sessionTokenService);
+    }
+
+    /**
+     * Stops Boot registering the filter with the servlet container as well: it must only run inside the security
+     *  filter chain, where the security configuration places it.
+     */
+    @Bean
+    public FilterRegistrationBean<SessionTokenFilter> sessionTokenFilterRegistration( SessionTokenFilter sessionTokenFilter) {
+        FilterRegistrationBean<SessionTokenFilter> registration = new FilterRegistrationBean<>( sessionTokenFilter);
+        registration.setEnabled( false);
+        return registration;
+    }
+}
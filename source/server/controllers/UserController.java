@@ -1,22 +1,49 @@
 package com.fujitsu.digital.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fujitsu.digital.domain.UserRole;
+import com.fujitsu.digital.domain.dto.UserBulkResultDTO;
+import com.fujitsu.digital.domain.dto.UserBulkUpdateDTO;
 import com.fujitsu.digital.domain.dto.UserDTO;
+import com.fujitsu.digital.domain.dto.UserDeltaDTO;
+import com.fujitsu.digital.domain.dto.UserPageDTO;
+import com.fujitsu.digital.domain.dto.UserPatchDTO;
+import com.fujitsu.digital.security.AvailabilityThrottle;
+import com.fujitsu.digital.security.ClientAddressResolver;
+import com.fujitsu.digital.security.PasswordHashingRejectedException;
+import com.fujitsu.digital.security.SessionTokenService;
+import com.fujitsu.digital.security.SigninThrottle;
 import com.fujitsu.digital.services.UserService;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.InvalidParameterException;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/users")
+@Timed(value = "ip.users.requests", percentiles = { 0.5, 0.95, 0.99 })
 public class UserController {
 
     private static final Logger logger = LoggerFactory.getLogger( UserController.class);
@@ -27,12 +54,174 @@ public class UserController {
         this.userService = userService;
     }
 
+    @Autowired
+    ObjectMapper objectMapper;
+    void setObjectMapper( ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Autowired
+    SigninThrottle signinThrottle;
+    void setSigninThrottle( SigninThrottle signinThrottle) {
+        this.signinThrottle = signinThrottle;
+    }
+
+    @Autowired
+    AvailabilityThrottle availabilityThrottle;
+    void setAvailabilityThrottle( AvailabilityThrottle availabilityThrottle) {
+        this.availabilityThrottle = availabilityThrottle;
+    }
+
+    @Autowired
+    ClientAddressResolver clientAddressResolver;
+    void setClientAddressResolver( ClientAddressResolver clientAddressResolver) {
+        this.clientAddressResolver = clientAddressResolver;
+    }
+
+    @Autowired
+    SessionTokenService sessionTokenService;
+    void setSessionTokenService( SessionTokenService sessionTokenService) {
+        this.sessionTokenService = sessionTokenService;
+    }
+
+    @Value("${ip.session.stateless:false}")
+    boolean statelessSessions;
+
+    @Value("${ip.users.bulk.max-size:1000}")
+    int maxBulkSize;
+
+    /**
+     * Retrieves a page of users, newest first.
+     * @param after The nextCursor from the previous page, or absent for the first page.
+     * @param size The maximum number of users to return.
+     * @return A UserPageDTO holding the users and the cursor for the next page (null on the last page), or HTTP 403
+     *  if the current user isn't an admin.
+     */
+    @CrossOrigin(allowCredentials="true")
+    @GetMapping("")
+    public ResponseEntity<UserPageDTO> getUsers( @RequestParam(value="after", required=false) Long after, @RequestParam(value="size", defaultValue="50") int size) {
+        if ( !isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        return new ResponseEntity<>( userService.getPage( after, size), HttpStatus.OK);
+    }
+
+    /**
+     * Retrieves a page of user summaries (without role or permissions), newest first, for lightweight listings.
+     * @param after The nextCursor from the previous page, or absent for the first page.
+     * @param size The maximum number of users to return.
+     * @return A UserPageDTO holding the summaries and the cursor for the next page (null on the last page).
+     */
+    @CrossOrigin(allowCredentials="true")
+    @GetMapping("/summaries")
+    public ResponseEntity<UserPageDTO> getUserSummaries( @RequestParam(value="after", required=false) Long after, @RequestParam(value="size", defaultValue="50") int size) {
+        if ( !isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        return new ResponseEntity<>( userService.getSummaryPage( after, size), HttpStatus.OK);
+    }
+
+    /**
+     * Finds users by partial name, username or email address, best matches first, e.g. for typeahead.
+     * @param query One or more terms, each matched against the start of a user's names, username or email address.
+     *  Terms of fewer than 2 characters are ignored.
+     * @param limit The maximum number of users to return.
+     * @return Summaries of the matching users.
+     */
+    @CrossOrigin(allowCredentials="true")
+    @GetMapping("/search")
+    public ResponseEntity<List<UserDTO>> searchUsers( @RequestParam(value="q") String query, @RequestParam(value="limit", defaultValue="10") int limit) {
+        if ( !isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        return new ResponseEntity<>( userService.search( query, limit), HttpStatus.OK);
+    }
+
+    /**
+     * Checks whether a username and/or email address is still free, e.g. as a user fills in the registration form.
+     * @param username The username to check, if any.
+     * @param emailAddress The email address to check, if any.
+     * @return The availability of each value supplied, keyed "username" and "emailAddress", or HTTP 429 if the
+     *  client address has made too many recent checks.
+     */
+    @CrossOrigin(allowCredentials="true")
+    @GetMapping("/available")
+    public ResponseEntity<Map<String,Boolean>> checkAvailable( @RequestParam(value="username", required=false) String username, @RequestParam(value="emailAddress", required=false) String emailAddress, HttpServletRequest request) {
+        String clientAddress = clientAddressResolver.resolve( request);
+        if ( !availabilityThrottle.tryCheck( clientAddress)) {
+            logger.warn( "checkAvailable(); throttled address = {}", clientAddress);
+            return new ResponseEntity<>( HttpStatus.TOO_MANY_REQUESTS);
+        }
+        Map<String,Boolean> result = new LinkedHashMap<>();
+        if ( username != null) {
+            result.put( "username", userService.isUsernameAvailable( username));
+        }
+        if ( emailAddress != null) {
+            result.put( "emailAddress", userService.isEmailAddressAvailable( emailAddress));
+        }
+        return new ResponseEntity<>( result, HttpStatus.OK);
+    }
+
+    /**
+     * Retrieves the users created, updated or disabled since the caller's last call, for downstream systems (e.g.
+     *  reporting, directory sync) that keep their own copy of the user list.
+     * @param cursor The cursor from the previous call, or absent to start from the beginning.
+     * @param size The maximum number of users to return.
+     * @return A UserDeltaDTO holding summaries of the changed users and the cursor to resume from, or HTTP 400 if the
+     *  cursor is malformed, or HTTP 403 if the current user isn't an admin.
+     */
+    @CrossOrigin(allowCredentials="true")
+    @GetMapping("/changes")
+    public ResponseEntity<UserDeltaDTO> getUserChanges( @RequestParam(value="cursor", required=false) String cursor, @RequestParam(value="size", defaultValue="200") int size) {
+        if ( !isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        UserDeltaDTO result = null;
+        try {
+            result = userService.getChanges( cursor, size);
+        }
+        catch ( InvalidParameterException ipe) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>( result, HttpStatus.OK);
+    }
+
+    /**
+     * Exports every user as a single JSON array. Users are read, mapped and written incrementally, so neither the
+     *  server's memory nor the time to first byte grows with the number of users.
+     * @return A streamed JSON array of fully populated UserDTOs, or HTTP 403 if the current user isn't an admin.
+     */
+    @CrossOrigin(allowCredentials="true")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        logger.info( "exportUsers();");
+        if ( !isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        StreamingResponseBody body = outputStream -> {
+            try ( JsonGenerator generator = objectMapper.getFactory().createGenerator( outputStream);
+                  Stream<UserDTO> users = userService.streamAll( 500)) {
+                generator.writeStartArray();
+                users.forEach( user -> {
+                    try {
+                        objectMapper.writeValue( generator, user);
+                    }
+                    catch ( IOException e) {
+                        throw new UncheckedIOException( e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType( MediaType.APPLICATION_JSON_UTF8).body( body);
+    }
+
     /**
      * Starts a user registration sequence. Users who satisfy certain criteria may be asked to self-verify their
      *  details and thus auto-activate their account. Alternatively, admins may be asked to review the user's details
      *  and manually activate their account.
      * @param userDTO A UserDTO fully populated with a new user's registration details.
-     * @return A fully populated UserDTO, or HTTP 409 if there is a username conflict, or HTTP 400
+     * @return A fully populated UserDTO, or HTTP 409 if the username or email address is taken, or HTTP 400
      *  if the request is badly formed.
      */
     @CrossOrigin(allowCredentials="true")
@@ -52,6 +241,35 @@ public class UserController {
         return new ResponseEntity<>( result, HttpStatus.OK);
     }
 
+    /**
+     * Registers a batch of new users in one request, e.g. to onboard a whole department. Rows that are incomplete, or
+     *  whose username or email address is already taken (or repeated within the batch), are reported individually
+     *  and don't prevent the rest of the batch from being registered.
+     * @param userDTOs UserDTOs fully populated with each new user's registration details.
+     * @return One UserBulkResultDTO per supplied user, in the same order, or HTTP 403 if the current user isn't an
+     *  admin, or HTTP 413 if there are more than ip.users.bulk.max-size users, or HTTP 400 if the request is badly
+     *  formed.
+     */
+    @CrossOrigin(allowCredentials="true")
+    @PostMapping("/register/bulk")
+    public ResponseEntity<List<UserBulkResultDTO>> registerAll( @RequestBody List<UserDTO> userDTOs) {
+        logger.info( "registerAll(); count = {}", userDTOs.size());
+        if ( !isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        if ( userDTOs.size() > maxBulkSize) {
+            return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        List<UserBulkResultDTO> result = null;
+        try {
+            result = userService.createUsers( userDTOs);
+        }
+        catch ( InvalidParameterException ipe) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>( result, HttpStatus.OK);
+    }
+
     /**
      * Completes a user registration sequence (for self-verification only).
      * @param userDTO A sparsely populated UserDTO.
@@ -74,19 +292,38 @@ public class UserController {
     /**
      * Attempts to sign-in an existing registered user.
      * @param credentials The user's registered credentials.
-     * @return A fully populated UserDTO or HTTP response 404 if the user doesn't exist.
+     * @param request The HTTP request, used to identify the client's address.
+     * @return A fully populated UserDTO or HTTP response 404 if the user doesn't exist, or HTTP 429 if there have been
+     *  too many recent failed attempts for the username from the client's address, for the username in total, or from
+     *  the client's address.
      */
-    @CrossOrigin(allowCredentials="true")
+    @CrossOrigin(allowCredentials="true", exposedHeaders=SessionTokenService.HEADER)
     @PostMapping("/signin")
-    public ResponseEntity<UserDTO> signin( @RequestBody Map<String,String> credentials) {
-        logger.info( "signin(); username = {}", credentials.get( "username"));
+    public ResponseEntity<UserDTO> signin( @RequestBody Map<String,String> credentials, HttpServletRequest request) {
+        String username = credentials.get( "username");
+        String clientAddress = clientAddressResolver.resolve( request);
+        logger.info( "signin(); username = {}", username);
+
+        // Turn away throttled attempts before doing any (expensive) password hashing
+        if ( signinThrottle.isBlocked( username, clientAddress)) {
+            logger.warn( "signin(); throttled username = {}, address = {}", username, clientAddress);
+            return new ResponseEntity<>( HttpStatus.TOO_MANY_REQUESTS);
+        }
+
         UserDTO result = null;
         try {
-            result = userService.signin( credentials.get( "username"), credentials.get( "password"));
+            result = userService.signin( username, credentials.get( "password"));
         }
         catch ( UsernameNotFoundException e) {
+            signinThrottle.recordFailure( username, clientAddress);
             return new ResponseEntity<>( HttpStatus.NOT_FOUND);
         }
+        signinThrottle.recordSuccess( username, clientAddress);
+        if ( statelessSessions) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set( SessionTokenService.HEADER, sessionTokenService.issue( result));
+            return new ResponseEntity<>( result, headers, HttpStatus.OK);
+        }
         return new ResponseEntity<>( result, HttpStatus.OK);
     }
 
@@ -109,20 +346,39 @@ public class UserController {
     @CrossOrigin(allowCredentials="true")
     @RequestMapping("/me/health")
     public ResponseEntity<Boolean> getUserHealth() {
-        UserDTO user = userService.getCurrentUser();
-        return new ResponseEntity<>( (user != null && user.isActive()), HttpStatus.OK);
+        return new ResponseEntity<>( userService.isCurrentUserActive(), HttpStatus.OK);
     }
 
     /**
      * Retrieves the current user's details. Used occasionally to refresh a signed-in user's details after a client
-     *  restart.
-     * @return A fully populated UserDTO.
+     *  restart. Supports conditional requests: the ETag identifies the user and their current version in the
+     *  database (not the version they signed in with), so a client that already holds the current details gets an
+     *  empty HTTP 304 instead, for the cost of a primary key lookup.
+     * @param ifNoneMatch The ETags of the client's cached copies, if any.
+     * @return A fully populated UserDTO, or HTTP 304 if it is unchanged.
      */
     @CrossOrigin(allowCredentials="true")
     @RequestMapping("/me")
-    public ResponseEntity<UserDTO> getUserInfo() {
+    public ResponseEntity<UserDTO> getUserInfo( @RequestHeader(value=HttpHeaders.IF_NONE_MATCH, required=false) String ifNoneMatch) {
         UserDTO result = userService.getCurrentUser();
-        return new ResponseEntity<>( result, HttpStatus.OK);
+        String etag = etagOf( result.getOid(), null);
+        if ( result.getOid() != null) {
+            Long version = userService.getVersion( result.getOid());
+            etag = etagOf( result.getOid(), version);
+            if ( !matchesAny( etag, ifNoneMatch)) {
+                // Changed since the client's copy (and perhaps since sign-in), so return the stored details, at the
+                // version just read: a cached copy may predate a change made on another node
+                UserDTO stored = userService.getById( result.getOid(), version);
+                if ( stored != null) {
+                    result = stored;
+                    etag = etagOf( stored.getOid(), stored.getVersion());
+                }
+            }
+        }
+        if ( matchesAny( etag, ifNoneMatch)) {
+            return ResponseEntity.status( HttpStatus.NOT_MODIFIED).eTag( etag).cacheControl( CacheControl.noCache().cachePrivate()).build();
+        }
+        return ResponseEntity.ok().eTag( etag).cacheControl( CacheControl.noCache().cachePrivate()).body( result);
     }
 
     /**
@@ -147,6 +403,33 @@ public class UserController {
         return new ResponseEntity<>( result, HttpStatus.OK);
     }
 
+    /**
+     * Applies the same change to many users at once, e.g. to activate a batch of registrations, or to move a group of
+     *  users to a new role.
+     * @param bulkUpdateDTO The user ids, and the change (active flag and/or role id) to apply to them.
+     * @return The number of user records changed, or HTTP 400 if no user ids are given or the role doesn't exist, or
+     *  HTTP 403 if the current user isn't an admin.
+     */
+    @CrossOrigin(allowCredentials="true")
+    @PutMapping("/bulk")
+    public ResponseEntity<Integer> updateUsers( @RequestBody UserBulkUpdateDTO bulkUpdateDTO) {
+        if ( !isAdmin()) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        if ( bulkUpdateDTO.getUserIds() == null || bulkUpdateDTO.getUserIds().isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        logger.info( "updateUsers(); count = {}, active = {}, roleId = {}", bulkUpdateDTO.getUserIds().size(), bulkUpdateDTO.getActive(), bulkUpdateDTO.getRoleId());
+        Integer result = null;
+        try {
+            result = userService.updateUsers( bulkUpdateDTO);
+        }
+        catch ( InvalidParameterException ipe) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>( result, HttpStatus.OK);
+    }
+
     /**
      * Starts the user password reset sequence.
      * @param userDTO A sparsely populated UserDTO.
@@ -185,4 +468,81 @@ public class UserController {
         return new ResponseEntity<>( result, HttpStatus.OK);
     }
 
-}
\ No newline at end of file
+    /**
+     * Applies a partial update to a user: only the fields supplied are changed. Admins may change any field of any
+     *  user; other users may change only their own first name, last name and password (with their current password).
+     * @param id The user's oid.
+     * @param patchDTO The fields to change, and the version of the user they were based on.
+     * @return The updated user (with its new version, also given as the ETag), HTTP 404 if there is no such user,
+     *  HTTP 409 if the user has changed since that version or the new username is taken, HTTP 400 if the version
+     *  is missing or a value is invalid, or HTTP 403 if the current user may not make the change.
+     */
+    @CrossOrigin(allowCredentials="true")
+    @PatchMapping("/{id}")
+    public ResponseEntity<UserDTO> patchUser( @PathVariable("id") Long id, @RequestBody UserPatchDTO patchDTO) {
+        logger.info( "patchUser(); id = {}, version = {}", id, patchDTO.getVersion());
+        UserDTO result = null;
+        try {
+            result = userService.patchUser( id, patchDTO);
+        }
+        catch ( UsernameNotFoundException unfe) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        catch ( OptimisticLockingFailureException | DuplicateKeyException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        catch ( InvalidParameterException ipe) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        catch ( AccessDeniedException ade) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        return ResponseEntity.ok().eTag( etagOf( result.getOid(), result.getVersion())).body( result);
+    }
+
+    private String etagOf( Long oid, Long version) {
+        return oid == null ? "\"anonymous\"" : "\"" + oid + "." + version + "\"";
+    }
+
+    /**
+     * @param ifNoneMatch An If-None-Match header: a comma separated list of (possibly weak) ETags.
+     * @return true if any of the listed ETags is the given (strong) ETag.
+     */
+    private static boolean matchesAny( String etag, String ifNoneMatch) {
+        if ( ifNoneMatch == null) {
+            return false;
+        }
+        for ( String candidate : ifNoneMatch.split( ",")) {
+            candidate = candidate.trim();
+            if ( candidate.startsWith( "W/")) {
+                candidate = candidate.substring( 2);
+            }
+            if ( etag.equals( candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the current user is an administrator, and so may list and manage other users' accounts.
+     */
+    private boolean isAdmin() {
+        return userService.getCurrentUser().isAdminUser();
+    }
+
+    /**
+     * Sheds load when password hashing is saturated (e.g. during a login storm), on any endpoint that needs to hash a
+     *  password.
+     * @param phre The rejection.
+     * @return HTTP 503, with a Retry-After header.
+     */
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<Void> passwordHashingRejected( PasswordHashingRejectedException phre) {
+        logger.warn( "passwordHashingRejected(); {}", phre.getMessage());
+        HttpHeaders headers = new HttpHeaders();
+        headers.set( HttpHeaders.RETRY_AFTER, "5");
+        return new ResponseEntity<>( headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.fujitsu.digital.domain;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity(name = "EMAIL_OUTBOX")
+public class EmailOutbox extends AuditableEntityIdImpl {
+
+    public static final String RECIPIENT_SEPARATOR = ",";
+    public static final int CONTENT_LENGTH = 4000;
+
+    public enum Status {
+        PENDING,
+        SENDING,
+        SENT,
+        FAILED
+    }
+
+    @Column(name = "STATUS")
+    private Status status;
+
+    @Column(name = "RECIPIENTS", length = 2000)
+    private String recipients;
+
+    @Column(name = "SUBJECT")
+    private String subject;
+
+    @Column(name = "CONTENT", length = CONTENT_LENGTH)
+    private String content;
+
+    @Column(name = "TEMPLATE_NAME")
+    private String templateName;
+
+    @Column(name = "ATTEMPTS")
+    private int attempts;
+
+    @Column(name = "NEXT_ATTEMPT_DATE")
+    private LocalDateTime nextAttemptDate;
+
+    @Column(name = "LAST_ERROR", length = 1000)
+    private String lastError;
+
+    public Status getStatus() {
+        return status;
+    }
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getRecipients() {
+        return recipients;
+    }
+    public void setRecipients(String recipients) {
+        this.recipients = recipients;
+    }
+    public String[] getRecipientArray() {
+        return recipients != null ? recipients.split( RECIPIENT_SEPARATOR) : new String[0];
+    }
+    public void setRecipientArray(String[] recipients) {
+        this.recipients = String.join( RECIPIENT_SEPARATOR, recipients);
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getContent() {
+        return content;
+    }
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public String getTemplateName() {
+        return templateName;
+    }
+    public void setTemplateName(String templateName) {
+        this.templateName = templateName;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getNextAttemptDate() {
+        return nextAttemptDate;
+    }
+    public void setNextAttemptDate(LocalDateTime nextAttemptDate) {
+        this.nextAttemptDate = nextAttemptDate;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
@@ -0,0 +1,31 @@
+package com.fujitsu.digital.domain;
+
+import javax.persistence.*;
+
+/**
+ * One revocation of a user's session tokens: every token issued to the user up to (and including) REVOKED_AT, in
+ *  epoch milliseconds, is refused. Kept only until the tokens it covers have expired.
+ */
+@Entity(name = "SESSION_REVOCATION")
+public class SessionRevocation extends AuditableEntityIdImpl {
+
+    @Column(name = "USER_OID")
+    private Long userOid;
+
+    @Column(name = "REVOKED_AT")
+    private long revokedAt;
+
+    public Long getUserOid() {
+        return userOid;
+    }
+    public void setUserOid(Long userOid) {
+        this.userOid = userOid;
+    }
+
+    public long getRevokedAt() {
+        return revokedAt;
+    }
+    public void setRevokedAt(long revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+}
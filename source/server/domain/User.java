@@ -1,12 +1,15 @@
 package com.fujitsu.digital.domain;
 
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import javax.persistence.*;
 import java.util.Collection;
+import java.util.Locale;
 
 @Entity(name = "USER")
+@DynamicUpdate
 public class User extends AuditableEntityIdImpl implements UserDetails {
 
     public static final String DEFAULT_ACCESS_LEVEL_NAME = "PUBLIC";
@@ -31,6 +34,11 @@ public class User extends AuditableEntityIdImpl implements UserDetails {
     @Column(name = "USER_NAME", unique = true)
     private String username;
 
+    // Normalised (trimmed, lower case) copy of the username, maintained by setUsername(). Lookups compare against this
+    // indexed column directly, rather than wrapping USER_NAME in a function and so defeating its index
+    @Column(name = "USER_NAME_LOOKUP", unique = true)
+    private String usernameLookup;
+
     @Column(name = "PASSWORD")
     private String password;
 
@@ -56,6 +64,10 @@ public class User extends AuditableEntityIdImpl implements UserDetails {
     @JoinColumn(name = "ROLE_ID")
     private UserRole userRole;
 
+    @Version
+    @Column(name = "VERSION")
+    private Long version;
+
     public Status getStatus() {
         return status;
     }
@@ -118,6 +130,13 @@ public class User extends AuditableEntityIdImpl implements UserDetails {
         this.userRole = userRole;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public Collection<GrantedAuthority> getAuthorities() {
         return null;
@@ -129,6 +148,19 @@ public class User extends AuditableEntityIdImpl implements UserDetails {
     }
     public void setUsername(String username) {
         this.username = username;
+        this.usernameLookup = normaliseUsername( username);
+    }
+
+    public String getUsernameLookup() {
+        return usernameLookup;
+    }
+
+    /**
+     * @param username A username as entered by a user, in any case, possibly with surrounding whitespace.
+     * @return The form in which usernames are stored in, and looked up by, the USER_NAME_LOOKUP column.
+     */
+    public static String normaliseUsername( String username) {
+        return username != null ? username.trim().toLowerCase( Locale.ROOT) : null;
     }
 
     @Override
@@ -0,0 +1,59 @@
+package com.fujitsu.digital.domain;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A one-time token emailed to a user, e.g. to verify their registration or to reset their password. Only a keyed
+ *  digest of the token is stored, never the token itself.
+ */
+@Entity(name = "USER_TOKEN")
+@Table(name = "USER_TOKEN", indexes = { @Index(name = "IDX_USER_TOKEN_EXPIRY", columnList = "EXPIRY_DATE") })
+public class UserToken extends AuditableEntityIdImpl {
+
+    public enum Purpose {
+        VERIFICATION,
+        RESET
+    }
+
+    @Column(name = "DIGEST", unique = true, length = 64)
+    private String digest;
+
+    @Column(name = "PURPOSE")
+    private Purpose purpose;
+
+    @Column(name = "EXPIRY_DATE")
+    private LocalDateTime expiryDate;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "USER_ID")
+    private User user;
+
+    public String getDigest() {
+        return digest;
+    }
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public Purpose getPurpose() {
+        return purpose;
+    }
+    public void setPurpose(Purpose purpose) {
+        this.purpose = purpose;
+    }
+
+    public LocalDateTime getExpiryDate() {
+        return expiryDate;
+    }
+    public void setExpiryDate(LocalDateTime expiryDate) {
+        this.expiryDate = expiryDate;
+    }
+
+    public User getUser() {
+        return user;
+    }
+    public void setUser(User user) {
+        this.user = user;
+    }
+}
@@ -0,0 +1,59 @@
+package com.fujitsu.digital.domain.dto;
+
+/**
+ * The outcome for one row of a bulk user operation.
+ */
+public class UserBulkResultDTO {
+
+    public enum Outcome {
+        CREATED,
+        DUPLICATE,
+        INVALID
+    }
+
+    private int index;
+    private String username;
+    private Outcome outcome;
+    private UserDTO user;
+
+    public UserBulkResultDTO() {
+    }
+    public UserBulkResultDTO( int index, String username) {
+        this.index = index;
+        this.username = username;
+    }
+
+    /**
+     * @return The position of the row in the original request.
+     */
+    public int getIndex() {
+        return index;
+    }
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+    public void setOutcome(Outcome outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * @return A summary of the new user, if the row was CREATED.
+     */
+    public UserDTO getUser() {
+        return user;
+    }
+    public void setUser(UserDTO user) {
+        this.user = user;
+    }
+}
@@ -0,0 +1,35 @@
+package com.fujitsu.digital.domain.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A change to apply to many users at once. Only the supplied (non-null) changes are applied.
+ */
+public class UserBulkUpdateDTO {
+
+    private List<Long> userIds = new ArrayList<>();
+    private Boolean active;
+    private Long roleId;
+
+    public List<Long> getUserIds() {
+        return userIds;
+    }
+    public void setUserIds(List<Long> userIds) {
+        this.userIds = userIds;
+    }
+
+    public Boolean getActive() {
+        return active;
+    }
+    public void setActive(Boolean active) {
+        this.active = active;
+    }
+
+    public Long getRoleId() {
+        return roleId;
+    }
+    public void setRoleId(Long roleId) {
+        this.roleId = roleId;
+    }
+}
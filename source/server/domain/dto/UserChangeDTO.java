@@ -0,0 +1,72 @@
+package com.fujitsu.digital.domain.dto;
+
+import com.fujitsu.digital.domain.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * A user's state as created or last saved, for in-memory views of the user table to keep themselves current. Read
+ *  from the change feed (UserRepository.CHANGE_SELECT) by UserChangeFeedFollower, and published as an event by
+ *  UserServiceImpl whenever a user is saved. The state is copied when it is created, so it can be read safely after
+ *  the transaction has ended.
+ */
+public class UserChangeDTO {
+
+    private final Long oid;
+    private final Long roleOid;
+    private final String username;
+    private final String firstName;
+    private final String lastName;
+    private final String emailAddress;
+    private final boolean active;
+    private final LocalDateTime updatedDate;
+
+    public UserChangeDTO( User user) {
+        this( user.getOid(), user.getUserRole() != null ? user.getUserRole().getOid() : null, user.getUsername(),
+                user.getFirstName(), user.getLastName(), user.getEmailAddress(), user.isActive(), user.getUpdatedDate());
+    }
+
+    public UserChangeDTO( Long oid, Long roleOid, String username, String firstName, String lastName, String emailAddress,
+                           boolean active, LocalDateTime updatedDate) {
+        this.oid = oid;
+        this.roleOid = roleOid;
+        this.username = username;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.emailAddress = emailAddress;
+        this.active = active;
+        this.updatedDate = updatedDate;
+    }
+
+    public Long getOid() {
+        return oid;
+    }
+
+    public Long getRoleOid() {
+        return roleOid;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public LocalDateTime getUpdatedDate() {
+        return updatedDate;
+    }
+}
@@ -1,5 +1,6 @@
 package com.fujitsu.digital.domain.dto;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -24,9 +25,35 @@ public class UserDTO extends AuditableDTOIdImpl implements UserDetails {
     private String status;
     private String securityLevel;
     private String token;
+    private Long version;
     private boolean credentialsExpired = Boolean.FALSE;
     private List<UserPermissionDTO> userPermissions = new ArrayList<>();
 
+    public UserDTO() {
+    }
+
+    /**
+     * Builds a summary: the user's own columns, with the password blanked. This is the one place summaries are built,
+     *  whether from a JPQL constructor projection (without loading a managed User), a loaded User (UserMapper), or
+     *  the search index.
+     * @param status The user's status (User.Status), or null if not known.
+     * @param active Whether the user is active, as User.isActive() decides it.
+     */
+    public UserDTO( Long oid, String username, String firstName, String lastName, String emailAddress, Enum<?> status,
+                    boolean active, LocalDateTime createdDate, LocalDateTime updatedDate) {
+        setOid( oid);
+        this.username = username;
+        this.password = "";
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.fullName = firstName + " " + lastName;
+        this.emailAddress = emailAddress;
+        this.status = status == null ? null : status.name();
+        this.active = active;
+        setCreatedDate( createdDate);
+        setUpdatedDate( updatedDate);
+    }
+
     public String getStatus() {
         return status;
     }
@@ -90,6 +117,13 @@ public class UserDTO extends AuditableDTOIdImpl implements UserDetails {
         this.token = token;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public Boolean getActive() {
         return active;
     }
@@ -0,0 +1,49 @@
+package com.fujitsu.digital.domain.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserDeltaDTO {
+
+    private List<UserDTO> users = new ArrayList<>();
+    private String cursor;
+    private boolean more;
+
+    public UserDeltaDTO() {
+    }
+    public UserDeltaDTO( List<UserDTO> users, String cursor, boolean more) {
+        this.users = users;
+        this.cursor = cursor;
+        this.more = more;
+    }
+
+    /**
+     * @return Summaries of the users created, updated or disabled since the caller's cursor, oldest change first.
+     */
+    public List<UserDTO> getUsers() {
+        return users;
+    }
+    public void setUsers(List<UserDTO> users) {
+        this.users = users;
+    }
+
+    /**
+     * @return The opaque cursor to pass back to resume from the end of this delta. Unchanged if there were no changes.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return true if more changes are already waiting, i.e. the caller should come straight back for them.
+     */
+    public boolean isMore() {
+        return more;
+    }
+    public void setMore(boolean more) {
+        this.more = more;
+    }
+}
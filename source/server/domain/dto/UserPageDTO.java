@@ -0,0 +1,34 @@
+package com.fujitsu.digital.domain.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserPageDTO {
+
+    private List<UserDTO> users = new ArrayList<>();
+    private Long nextCursor;
+
+    public UserPageDTO() {
+    }
+    public UserPageDTO( List<UserDTO> users, Long nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<UserDTO> getUsers() {
+        return users;
+    }
+    public void setUsers(List<UserDTO> users) {
+        this.users = users;
+    }
+
+    /**
+     * @return The oid to pass back as the "after" cursor to fetch the next page, or null if this is the last page.
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,83 @@
+package com.fujitsu.digital.domain.dto;
+
+/**
+ * A partial update to one user. Only the supplied (non-null) fields are applied. The version is required: it must be
+ *  the version of the user the changes were based on, and the update is refused if the user has changed since.
+ *
+ * The current password isn't applied: a user changing their own password must supply it, to show it is them.
+ */
+public class UserPatchDTO {
+
+    private Long version;
+    private String username;
+    private String password;
+    private String currentPassword;
+    private String firstName;
+    private String lastName;
+    private String securityLevel;
+    private Long roleId;
+    private Boolean active;
+
+    public Long getVersion() {
+        return version;
+    }
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public String getCurrentPassword() {
+        return currentPassword;
+    }
+    public void setCurrentPassword(String currentPassword) {
+        this.currentPassword = currentPassword;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getSecurityLevel() {
+        return securityLevel;
+    }
+    public void setSecurityLevel(String securityLevel) {
+        this.securityLevel = securityLevel;
+    }
+
+    public Long getRoleId() {
+        return roleId;
+    }
+    public void setRoleId(Long roleId) {
+        this.roleId = roleId;
+    }
+
+    public Boolean getActive() {
+        return active;
+    }
+    public void setActive(Boolean active) {
+        this.active = active;
+    }
+}
@@ -0,0 +1,51 @@
+package com.fujitsu.digital.repositories;
+
+import com.fujitsu.digital.domain.EmailOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    @Query(value = "SELECT e.oid FROM com.fujitsu.digital.domain.EmailOutbox AS e " +
+            "WHERE e.status = com.fujitsu.digital.domain.EmailOutbox$Status.PENDING AND e.nextAttemptDate <= :now " +
+            "ORDER BY e.nextAttemptDate")
+    List<Long> findDueIds( @Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Claims a single pending message for sending. Only one caller (on any node) can win the claim, so a message is
+     *  never handed to the mail server twice by competing dispatchers.
+     * @return 1 if the claim succeeded, else 0.
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.EmailOutbox AS e " +
+            "SET e.status = com.fujitsu.digital.domain.EmailOutbox$Status.SENDING, e.updatedDate = :now " +
+            "WHERE e.oid = :oid AND e.status = com.fujitsu.digital.domain.EmailOutbox$Status.PENDING AND e.nextAttemptDate <= :now")
+    int claim( @Param("oid") Long oid, @Param("now") LocalDateTime now);
+
+    /**
+     * Returns messages abandoned mid-send (e.g. by a node that died) to the pending state.
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.EmailOutbox AS e " +
+            "SET e.status = com.fujitsu.digital.domain.EmailOutbox$Status.PENDING " +
+            "WHERE e.status = com.fujitsu.digital.domain.EmailOutbox$Status.SENDING AND e.updatedDate < :cutoff")
+    int releaseStale( @Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Deletes messages that have been sent, or given up on, and not touched since the cutoff.
+     * @return The number of messages deleted.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM com.fujitsu.digital.domain.EmailOutbox AS e " +
+            "WHERE e.status IN (com.fujitsu.digital.domain.EmailOutbox$Status.SENT, com.fujitsu.digital.domain.EmailOutbox$Status.FAILED) " +
+            "AND e.updatedDate < :cutoff")
+    int deleteFinishedBefore( @Param("cutoff") LocalDateTime cutoff);
+}
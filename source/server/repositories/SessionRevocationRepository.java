@@ -0,0 +1,28 @@
+package com.fujitsu.digital.repositories;
+
+import com.fujitsu.digital.domain.SessionRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SessionRevocationRepository extends JpaRepository<SessionRevocation, Long> {
+
+    /**
+     * @return Each revoked user's oid, and the time their tokens were last revoked.
+     */
+    @Query(value = "SELECT r.userOid, MAX(r.revokedAt) FROM com.fujitsu.digital.domain.SessionRevocation AS r GROUP BY r.userOid")
+    List<Object[]> findLatestRevocations();
+
+    /**
+     * Deletes revocations made before the cutoff, once every token they cover has expired.
+     * @return The number of revocations deleted.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM com.fujitsu.digital.domain.SessionRevocation AS r WHERE r.revokedAt < :cutoff")
+    int deleteRevokedBefore( @Param("cutoff") long cutoff);
+}
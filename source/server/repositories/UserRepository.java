@@ -2,31 +2,248 @@ package com.fujitsu.digital.repositories;
 
 import com.fujitsu.digital.domain.User;
 import com.fujitsu.digital.domain.UserRole;
+import com.fujitsu.digital.domain.dto.UserDTO;
+import com.fujitsu.digital.domain.dto.UserChangeDTO;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
-    @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u WHERE UPPER(u.username) = UPPER(:username) AND u.password = :password AND u.active = 'Y'")
-    User findByUsernameAndPassword( @Param("username") String username, @Param("password") String password);
+    // Summary queries select just the columns a summary UserDTO needs, straight into the DTO. Nothing is loaded into
+    // the persistence context, so there are no entity snapshots to hold or to dirty check at flush, and no role proxies.
+    // The active flag is compared case insensitively, as User.isActive() does
+    String SUMMARY_SELECT = "SELECT new com.fujitsu.digital.domain.dto.UserDTO( u.oid, u.username, u.firstName, u.lastName, u.emailAddress, u.status, " +
+            "CASE WHEN UPPER(u.active) = UPPER(com.fujitsu.digital.domain.User.USER_ACTIVE) THEN true ELSE false END, u.createdDate, u.updatedDate) ";
 
-    @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u WHERE UPPER(u.username) = UPPER(:username) AND u.active = 'Y'")
-    User findByUsername( @Param("username") String username);
+    /**
+     * Signin lookup. Fetches the user's role and its permissions in the same statement, since signin always needs
+     *  both to build the user's authorities.
+     */
+    @Query(value = "SELECT DISTINCT u FROM com.fujitsu.digital.domain.User AS u " +
+            "LEFT JOIN FETCH u.userRole AS ur " +
+            "LEFT JOIN FETCH ur.userPermissionList " +
+            "WHERE u.usernameLookup = :usernameLookup AND u.password = :password AND u.active = 'Y'")
+    User findByUsernameLookupAndPassword( @Param("usernameLookup") String usernameLookup, @Param("password") String password);
 
-    @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u WHERE u.token = :token AND u.active = 'Y'")
-    User findByToken( @Param("token") String token);
+    default User findByUsernameAndPassword( String username, String password) {
+        return findByUsernameLookupAndPassword( User.normaliseUsername( username), password);
+    }
 
-    @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u WHERE u.token = :token")
-    User verifyByToken( @Param("token") String token);
+    /**
+     * @return true if the user's password is the given (hashed) password.
+     */
+    @Query(value = "SELECT CASE WHEN COUNT(u) > 0 THEN true ELSE false END FROM com.fujitsu.digital.domain.User AS u " +
+            "WHERE u.oid = :oid AND u.password = :password")
+    boolean hasPassword( @Param("oid") Long oid, @Param("password") String password);
+
+    @Query(value = "SELECT u.version FROM com.fujitsu.digital.domain.User AS u WHERE u.oid = :oid")
+    Long findVersionById( @Param("oid") Long oid);
+
+    @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u WHERE u.usernameLookup = :usernameLookup AND u.active = 'Y'")
+    User findByUsernameLookup( @Param("usernameLookup") String usernameLookup);
+
+    default User findByUsername( String username) {
+        return findByUsernameLookup( User.normaliseUsername( username));
+    }
+
+    @Query(value = "SELECT COUNT(u) FROM com.fujitsu.digital.domain.User AS u WHERE u.usernameLookup IS NULL AND u.username IS NOT NULL")
+    long countMissingUsernameLookup();
+
+    /**
+     * @return The normalised usernames shared by more than one user, i.e. usernames that differ only in case or
+     *  surrounding whitespace, and so can't all be given the same (unique) USER_NAME_LOOKUP.
+     */
+    @Query(value = "SELECT LOWER(TRIM(u.username)) FROM com.fujitsu.digital.domain.User AS u WHERE u.username IS NOT NULL " +
+            "GROUP BY LOWER(TRIM(u.username)) HAVING COUNT(u) > 1")
+    List<String> findCollidingUsernameLookups();
+
+    @Query(value = "SELECT u.username FROM com.fujitsu.digital.domain.User AS u WHERE LOWER(TRIM(u.username)) IN :usernameLookups ORDER BY u.oid")
+    List<String> findUsernamesByNormalisedUsername( @Param("usernameLookups") Collection<String> usernameLookups);
+
+    /**
+     * Populates USER_NAME_LOOKUP for rows written before the column existed.
+     * @return The number of rows updated.
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u SET u.usernameLookup = LOWER(TRIM(u.username)) " +
+            "WHERE u.usernameLookup IS NULL AND u.username IS NOT NULL")
+    int backfillUsernameLookup();
+
+    /**
+     * As backfillUsernameLookup(), but skipping the rows whose normalised username is one of those given.
+     * @return The number of rows updated.
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u SET u.usernameLookup = LOWER(TRIM(u.username)) " +
+            "WHERE u.usernameLookup IS NULL AND u.username IS NOT NULL AND LOWER(TRIM(u.username)) NOT IN :excluded")
+    int backfillUsernameLookupExcept( @Param("excluded") Collection<String> excluded);
+
+    // Set-based updates for bulk admin operations. Each only touches the rows it actually changes, bumps their version
+    // and stamps their updated date, exactly as a one-at-a-time update through the entity would
+
+    @Query(value = "SELECT u.emailAddress FROM com.fujitsu.digital.domain.User AS u " +
+            "WHERE u.oid IN :oids AND (u.active IS NULL OR u.active <> 'Y')")
+    List<String> findEmailAddressesToActivate( @Param("oids") Collection<Long> oids);
+
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u " +
+            "SET u.active = 'Y', u.status = com.fujitsu.digital.domain.User$Status.ACTIVE, u.updatedDate = :now, u.version = u.version + 1 " +
+            "WHERE u.oid IN :oids AND (u.active IS NULL OR u.active <> 'Y')")
+    int activate( @Param("oids") Collection<Long> oids, @Param("now") LocalDateTime now);
+
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u " +
+            "SET u.active = 'N', u.status = com.fujitsu.digital.domain.User$Status.DISABLED, u.updatedDate = :now, u.version = u.version + 1 " +
+            "WHERE u.oid IN :oids AND u.active = 'Y'")
+    int deactivate( @Param("oids") Collection<Long> oids, @Param("now") LocalDateTime now);
+
+    @Query(value = "SELECT u.emailAddress FROM com.fujitsu.digital.domain.User AS u " +
+            "WHERE u.oid IN :oids AND u.active = 'Y' AND (u.userRole IS NULL OR u.userRole <> :userRole)")
+    List<String> findActiveEmailAddressesToChangeRole( @Param("oids") Collection<Long> oids, @Param("userRole") UserRole userRole);
+
+    // Rows that both activate() (or deactivate()) and changeRole() will change, so that they can be counted once
+
+    @Query(value = "SELECT COUNT(u) FROM com.fujitsu.digital.domain.User AS u " +
+            "WHERE u.oid IN :oids AND (u.active IS NULL OR u.active <> 'Y') AND (u.userRole IS NULL OR u.userRole <> :userRole)")
+    long countToActivateAndChangeRole( @Param("oids") Collection<Long> oids, @Param("userRole") UserRole userRole);
+
+    @Query(value = "SELECT COUNT(u) FROM com.fujitsu.digital.domain.User AS u " +
+            "WHERE u.oid IN :oids AND u.active = 'Y' AND (u.userRole IS NULL OR u.userRole <> :userRole)")
+    long countToDeactivateAndChangeRole( @Param("oids") Collection<Long> oids, @Param("userRole") UserRole userRole);
+
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u " +
+            "SET u.userRole = :userRole, u.updatedDate = :now, u.version = u.version + 1 " +
+            "WHERE u.oid IN :oids AND (u.userRole IS NULL OR u.userRole <> :userRole)")
+    int changeRole( @Param("oids") Collection<Long> oids, @Param("userRole") UserRole userRole, @Param("now") LocalDateTime now);
+
+    /**
+     * Re-stamps the updated date of rows changed by the current transaction (those stamped since it started) as it
+     *  commits. Doesn't bump the version: this is the same change, just dated when it becomes visible.
+     * @return The number of rows updated.
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u SET u.updatedDate = :commitDate " +
+            "WHERE u.oid IN :oids AND u.updatedDate >= :since")
+    int restampUpdatedDate( @Param("oids") Collection<Long> oids, @Param("since") LocalDateTime since, @Param("commitDate") LocalDateTime commitDate);
+
+    // Change feed queries, in (updatedDate, oid) order. The oid breaks ties between users updated at the same instant,
+    // so a cursor made of the last (updatedDate, oid) seen resumes exactly where the previous call left off
+
+    @Query(value = SUMMARY_SELECT + "FROM com.fujitsu.digital.domain.User AS u " +
+            "WHERE u.updatedDate <= :until ORDER BY u.updatedDate, u.oid")
+    List<UserDTO> findChangedFirst( @Param("until") LocalDateTime until, Pageable pageable);
+
+    @Query(value = SUMMARY_SELECT + "FROM com.fujitsu.digital.domain.User AS u " +
+            "WHERE (u.updatedDate > :since OR (u.updatedDate = :since AND u.oid > :lastOid)) AND u.updatedDate <= :until " +
+            "ORDER BY u.updatedDate, u.oid")
+    List<UserDTO> findChangedSince( @Param("since") LocalDateTime since, @Param("lastOid") Long lastOid, @Param("until") LocalDateTime until, Pageable pageable);
+
+    /**
+     * Stamps an updated date on rows that have never been updated, so that they appear in the change feed.
+     * @return The number of rows updated.
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u SET u.updatedDate = u.createdDate WHERE u.updatedDate IS NULL")
+    int backfillUpdatedDate();
+
+    @Query(value = "SELECT u.usernameLookup FROM com.fujitsu.digital.domain.User AS u WHERE u.usernameLookup IN :usernameLookups")
+    List<String> findExistingUsernameLookups( @Param("usernameLookups") Collection<String> usernameLookups);
+
+    @Query(value = "SELECT u.emailAddress FROM com.fujitsu.digital.domain.User AS u WHERE u.emailAddress IN :emailAddresses")
+    List<String> findExistingEmailAddresses( @Param("emailAddresses") Collection<String> emailAddresses);
 
     @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u " +
-            "JOIN u.userRole AS ur " +
+            "WHERE u.token IS NOT NULL AND u.status = com.fujitsu.digital.domain.User$Status.PENDING")
+    List<User> findPendingWithLegacyToken();
+
+    /**
+     * Clears one user's legacy TOKEN.
+     * @return 1 if it was cleared here, or 0 if it had already been cleared (e.g. by another node).
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u SET u.token = NULL WHERE u.oid = :oid AND u.token IS NOT NULL")
+    int clearLegacyToken( @Param("oid") Long oid);
+
+    /**
+     * Clears tokens left in the legacy TOKEN column, now that tokens live in USER_TOKEN.
+     * @return The number of rows updated.
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u SET u.token = NULL WHERE u.token IS NOT NULL")
+    int clearLegacyTokens();
+
+    /**
+     * Initialises VERSION for rows written before the column existed.
+     * @return The number of rows updated.
+     */
+    @Modifying
+    @Query(value = "UPDATE com.fujitsu.digital.domain.User AS u SET u.version = 0 WHERE u.version IS NULL")
+    int backfillVersion();
+
+    @Query(value = "SELECT DISTINCT u FROM com.fujitsu.digital.domain.User AS u " +
+            "JOIN FETCH u.userRole AS ur " +
             "JOIN ur.userPermissionList AS up WHERE up.name = :permissionName")
     List<User> findAllWithPermission( @Param("permissionName") String permissionName);
+
+    @Query(value = "SELECT DISTINCT u FROM com.fujitsu.digital.domain.User AS u LEFT JOIN FETCH u.userRole WHERE u.oid IN :oids")
+    List<User> findAllByOidFetchRole( @Param("oids") Collection<Long> oids);
+
+    // The change feed followed by UserChangeFeedFollower: every user, or those changed since a (updatedDate, oid)
+    // position, with just the columns the in-memory views of the user table need, in (updatedDate, oid) order
+
+    String CHANGE_SELECT = "SELECT new com.fujitsu.digital.domain.dto.UserChangeDTO( u.oid, ur.oid, u.username, u.firstName, u.lastName, u.emailAddress, " +
+            "CASE WHEN UPPER(u.active) = UPPER(com.fujitsu.digital.domain.User.USER_ACTIVE) THEN true ELSE false END, u.updatedDate) " +
+            "FROM com.fujitsu.digital.domain.User AS u LEFT JOIN u.userRole AS ur ";
+
+    @Query(value = CHANGE_SELECT + "WHERE u.updatedDate <= :until ORDER BY u.updatedDate, u.oid")
+    List<UserChangeDTO> findUserChangesFirst( @Param("until") LocalDateTime until, Pageable pageable);
+
+    @Query(value = CHANGE_SELECT +
+            "WHERE (u.updatedDate > :since OR (u.updatedDate = :since AND u.oid > :lastOid)) AND u.updatedDate <= :until " +
+            "ORDER BY u.updatedDate, u.oid")
+    List<UserChangeDTO> findUserChangesSince( @Param("since") LocalDateTime since, @Param("lastOid") Long lastOid, @Param("until") LocalDateTime until, Pageable pageable);
+
+    // Source for UserPermissionIndex: (role oid, permission name) pairs
+
+    @Query(value = "SELECT ur.oid, up.name FROM com.fujitsu.digital.domain.UserRole AS ur JOIN ur.userPermissionList AS up")
+    List<Object[]> findAllRolePermissionNames();
+
+    @EntityGraph(attributePaths = { "userRole" })
     List<User> findByUserRole( UserRole userRole);
+
+    @Override
+    @EntityGraph(attributePaths = { "userRole" })
+    Optional<User> findById( Long id);
+
+    // The list queries below fetch each user's role (a to-one join, so it's safe alongside LIMIT) but deliberately
+    // not the role's permissions. There are only a handful of roles, their permissions are loaded once per role per
+    // persistence context, and DTO mapping shares them via UserRoleAuthorityCache. So a list costs one statement for
+    // the users plus at most one per distinct role, however many users it holds.
+
+    @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u LEFT JOIN FETCH u.userRole ORDER BY u.oid DESC")
+    List<User> findAllFetchRole();
+
+    @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u LEFT JOIN FETCH u.userRole ORDER BY u.oid DESC")
+    List<User> findFirstPage( Pageable pageable);
+
+    @Query(value = "SELECT u FROM com.fujitsu.digital.domain.User AS u LEFT JOIN FETCH u.userRole WHERE u.oid < :lastSeenOid ORDER BY u.oid DESC")
+    List<User> findPageAfter( @Param("lastSeenOid") Long lastSeenOid, Pageable pageable);
+
+    @Query(value = SUMMARY_SELECT + "FROM com.fujitsu.digital.domain.User AS u ORDER BY u.oid DESC")
+    List<UserDTO> findSummaryFirstPage( Pageable pageable);
+
+    @Query(value = SUMMARY_SELECT + "FROM com.fujitsu.digital.domain.User AS u WHERE u.oid < :lastSeenOid ORDER BY u.oid DESC")
+    List<UserDTO> findSummaryPageAfter( @Param("lastSeenOid") Long lastSeenOid, Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.fujitsu.digital.repositories;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.UserToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface UserTokenRepository extends JpaRepository<UserToken, Long> {
+
+    @Query(value = "SELECT t FROM com.fujitsu.digital.domain.UserToken AS t JOIN FETCH t.user " +
+            "WHERE t.digest = :digest AND t.purpose = :purpose AND t.expiryDate > :now")
+    UserToken findValid( @Param("digest") String digest, @Param("purpose") UserToken.Purpose purpose, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "DELETE FROM com.fujitsu.digital.domain.UserToken AS t WHERE t.user = :user AND t.purpose = :purpose")
+    int deleteByUserAndPurpose( @Param("user") User user, @Param("purpose") UserToken.Purpose purpose);
+
+    @Modifying
+    @Query(value = "DELETE FROM com.fujitsu.digital.domain.UserToken AS t WHERE t.user IN :users AND t.purpose = :purpose")
+    int deleteByUsersAndPurpose( @Param("users") Collection<User> users, @Param("purpose") UserToken.Purpose purpose);
+
+    @Modifying
+    @Query(value = "DELETE FROM com.fujitsu.digital.domain.UserToken AS t WHERE t.expiryDate <= :now")
+    int deleteExpired( @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,48 @@
+package com.fujitsu.digital.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits username and email address availability checks per client address, over a sliding window, so that the
+ *  check can't be used to enumerate the registered users.
+ *
+ * Counted in the same ThrottleStore as SigninThrottle, and so over the same windows (ip.signin.throttle.window-ms),
+ *  under keys of their own; SigninThrottle's scheduled eviction forgets idle ones too. The sliding window is
+ *  approximated as SigninThrottle's is.
+ */
+@Component
+public class AvailabilityThrottle {
+
+    private static final String ADDRESS_PREFIX = "av:";
+
+    private ThrottleStore throttleStore;
+
+    @Value("${ip.signin.throttle.window-ms:900000}")
+    private long windowMillis;
+
+    @Value("${ip.users.availability.throttle.max-checks:100}")
+    private long maxChecks;
+
+    @Autowired
+    public void setThrottleStore(ThrottleStore throttleStore) {
+        this.throttleStore = throttleStore;
+    }
+
+    /**
+     * Counts one availability check from the client address.
+     * @return true if the check may go ahead; false if the address has made too many recent checks.
+     */
+    public boolean tryCheck( String clientAddress) {
+        if ( clientAddress == null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long windowId = now / windowMillis;
+        double elapsed = (double) ( now % windowMillis) / windowMillis;
+        String key = ADDRESS_PREFIX + clientAddress;
+        double estimate = throttleStore.increment( key, windowId) + throttleStore.get( key, windowId - 1) * ( 1.0 - elapsed);
+        return estimate <= maxChecks;
+    }
+}
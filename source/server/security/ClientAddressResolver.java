@@ -0,0 +1,66 @@
+package com.fujitsu.digital.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Works out the address of the client behind a request, for per-client throttling.
+ *
+ * Behind a load balancer or reverse proxy, every request's remote address is the proxy's, so the client's address has
+ *  to be taken from the X-Forwarded-For header instead. But anyone can send that header, so it is only believed when
+ *  the request came from one of the configured trusted proxies (ip.client.trusted-proxies, a comma separated list of
+ *  addresses). The header is then read from the right, skipping any further trusted proxies, and the first address
+ *  that isn't one is the client's: entries to the left of it were supplied by the client and can't be trusted.
+ */
+@Component
+public class ClientAddressResolver {
+
+    static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+    @Value("${ip.client.trusted-proxies:}")
+    private String trustedProxiesList;
+
+    private Set<String> trustedProxies = Collections.emptySet();
+
+    @PostConstruct
+    public void init() {
+        trustedProxies = Arrays.stream( trustedProxiesList.split( ","))
+                .map( String::trim)
+                .filter( address -> !address.isEmpty())
+                .collect( Collectors.toCollection( HashSet::new));
+    }
+
+    /**
+     * @return The client's address: the request's remote address, unless that is a trusted proxy and the request says
+     *  who it was forwarded for.
+     */
+    public String resolve( HttpServletRequest request) {
+        String result = request.getRemoteAddr();
+        if ( !trustedProxies.contains( result)) {
+            return result;
+        }
+        String forwardedFor = request.getHeader( FORWARDED_FOR_HEADER);
+        if ( forwardedFor != null) {
+            String[] addresses = forwardedFor.split( ",");
+            for ( int i = addresses.length - 1; i >= 0; i--) {
+                String address = addresses[i].trim();
+                if ( address.isEmpty()) {
+                    break;
+                }
+                result = address;
+                if ( !trustedProxies.contains( address)) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
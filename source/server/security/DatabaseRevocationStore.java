@@ -0,0 +1,92 @@
+package com.fujitsu.digital.security;
+
+import com.fujitsu.digital.domain.SessionRevocation;
+import com.fujitsu.digital.repositories.SessionRevocationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * RevocationStore shared by every node through the SESSION_REVOCATION table, used with stateless sessions
+ *  (ip.session.stateless=true) in place of the LocalRevocationStore.
+ *
+ * Tokens are checked against an in-memory copy of the table, so authenticating a request still needs no database
+ *  hit. A revocation is honoured at once by the node that made it, and by the others when they next re-read the
+ *  table (every ip.session.revocations.refresh-ms).
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "ip.session.stateless", havingValue = "true")
+public class DatabaseRevocationStore implements RevocationStore {
+
+    private final ConcurrentMap<Long, Long> revocations = new ConcurrentHashMap<>();
+
+    private SessionRevocationRepository sessionRevocationRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public void setSessionRevocationRepository(SessionRevocationRepository sessionRevocationRepository) {
+        this.sessionRevocationRepository = sessionRevocationRepository;
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        // Revocations are made after the change that caused them commits, so in a transaction of their own; and read
+        // in a read-write (so primary) one, since a replica could be missing the latest
+        this.transactionTemplate = new TransactionTemplate( transactionManager);
+        this.transactionTemplate.setPropagationBehavior( TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public void revoke( long userOid, long revokedAtMillis) {
+        revocations.merge( userOid, revokedAtMillis, Math::max);
+        SessionRevocation revocation = new SessionRevocation();
+        revocation.setUserOid( userOid);
+        revocation.setRevokedAt( revokedAtMillis);
+        revocation.setCreatedDate( LocalDateTime.now());
+        revocation.setUpdatedDate( revocation.getCreatedDate());
+        transactionTemplate.execute( status -> sessionRevocationRepository.save( revocation));
+    }
+
+    @Override
+    public long revokedAt( long userOid) {
+        Long result = revocations.get( userOid);
+        return result != null ? result : 0L;
+    }
+
+    @Override
+    public void evictBefore( long millis) {
+        revocations.values().removeIf( revokedAt -> revokedAt < millis);
+        transactionTemplate.execute( status -> sessionRevocationRepository.deleteRevokedBefore( millis));
+    }
+
+    /**
+     * Reads the revocations before the first request is authenticated, so none made before a restart is missed.
+     */
+    @PostConstruct
+    public void load() {
+        refresh();
+    }
+
+    /**
+     * Picks up the revocations made by other nodes.
+     */
+    @Scheduled(fixedDelayString = "${ip.session.revocations.refresh-ms:5000}", initialDelayString = "${ip.session.revocations.refresh-ms:5000}")
+    public void refresh() {
+        List<Object[]> latest = transactionTemplate.execute( status -> sessionRevocationRepository.findLatestRevocations());
+        for ( Object[] revocation : latest) {
+            revocations.merge( (Long) revocation[0], (Long) revocation[1], Math::max);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.fujitsu.digital.security;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-process RevocationStore. Holds one timestamp per revoked user, and only until the tokens it covers expire, so
+ *  it stays small.
+ */
+@Component
+public class LocalRevocationStore implements RevocationStore {
+
+    private final ConcurrentMap<Long, Long> revocations = new ConcurrentHashMap<>();
+
+    @Override
+    public void revoke( long userOid, long revokedAtMillis) {
+        revocations.merge( userOid, revokedAtMillis, Math::max);
+    }
+
+    @Override
+    public long revokedAt( long userOid) {
+        Long result = revocations.get( userOid);
+        return result != null ? result : 0L;
+    }
+
+    @Override
+    public void evictBefore( long millis) {
+        revocations.values().removeIf( revokedAt -> revokedAt < millis);
+    }
+}
@@ -0,0 +1,87 @@
+package com.fujitsu.digital.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process ThrottleStore. Keys are spread over a ConcurrentHashMap's internal stripes, and each key's counters are
+ *  updated with compare-and-set only, so concurrent sign-in attempts never block one another.
+ *
+ * Each key holds two slots, one for even and one for odd window ids: enough for a sliding estimate over the current
+ *  and previous windows. A slot packs its window id and count into a single long, so a window rollover and an
+ *  increment are one atomic step.
+ *
+ * The number of keys is capped (ip.signin.throttle.max-keys), so a flood of distinct usernames or addresses can't
+ *  exhaust the heap. When the cap is reached, idle keys are evicted early; if that frees nothing, new keys aren't
+ *  counted until it does, but keys already held (e.g. the flooding addresses themselves) still are.
+ */
+@Component
+public class LocalThrottleStore implements ThrottleStore {
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = ( 1L << COUNT_BITS) - 1;
+
+    private static final Logger log = LoggerFactory.getLogger(LocalThrottleStore.class);
+
+    private final ConcurrentMap<String, AtomicLongArray> counters = new ConcurrentHashMap<>();
+
+    @Value("${ip.signin.throttle.max-keys:100000}")
+    private int maxKeys;
+
+    private volatile long fullEvictionWindowId = -1;
+
+    @Override
+    public long increment( String key, long windowId) {
+        AtomicLongArray slots = counters.get( key);
+        if ( slots == null) {
+            if ( counters.size() >= maxKeys) {
+                // Evicting scans every key, so is tried at most once per window
+                if ( fullEvictionWindowId != windowId) {
+                    fullEvictionWindowId = windowId;
+                    evictIdle( windowId - 1);
+                    log.warn( "increment(); reached {} keys, {} held after evicting idle keys", maxKeys, counters.size());
+                }
+                if ( counters.size() >= maxKeys) {
+                    return 0;
+                }
+            }
+            slots = counters.computeIfAbsent( key, k -> new AtomicLongArray( 2));
+        }
+        int slot = (int) ( windowId & 1);
+        while ( true) {
+            long current = slots.get( slot);
+            long count = ( current >>> COUNT_BITS) == windowId ? current & COUNT_MASK : 0;
+            long next = ( windowId << COUNT_BITS) | Math.min( count + 1, COUNT_MASK);
+            if ( slots.compareAndSet( slot, current, next)) {
+                return next & COUNT_MASK;
+            }
+        }
+    }
+
+    @Override
+    public long get( String key, long windowId) {
+        AtomicLongArray slots = counters.get( key);
+        if ( slots == null) {
+            return 0;
+        }
+        long current = slots.get( (int) ( windowId & 1));
+        return ( current >>> COUNT_BITS) == windowId ? current & COUNT_MASK : 0;
+    }
+
+    @Override
+    public void reset( String key) {
+        counters.remove( key);
+    }
+
+    @Override
+    public void evictIdle( long oldestWindowId) {
+        counters.entrySet().removeIf( entry ->
+                ( entry.getValue().get( 0) >>> COUNT_BITS) < oldestWindowId && ( entry.getValue().get( 1) >>> COUNT_BITS) < oldestWindowId);
+    }
+}
@@ -0,0 +1,154 @@
+package com.fujitsu.digital.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password hashing on a dedicated, size-capped pool of threads, rather than on whichever request thread needs a
+ *  hash. Hashing is deliberately CPU-expensive, so under a login storm it would otherwise occupy every request
+ *  thread and starve the rest of the API (including the health check).
+ *
+ * The pool has a bounded queue. Once that fills, further hashing requests are rejected immediately with a
+ *  PasswordHashingRejectedException, rather than queueing up behind work the client will have given up on.
+ *
+ * Callers wait for their hash, so they should not hold a transaction (and its database connection) meanwhile.
+ */
+@Component
+public class PasswordHasher {
+
+    private UserProvider userProvider;
+    private MeterRegistry meterRegistry;
+    private ThreadPoolExecutor executor;
+    private int poolSize;
+    private Timer hashTimer;
+    private Counter rejectedCounter;
+
+    @Value("${ip.password.hash.threads:0}")
+    private int threads;
+
+    @Value("${ip.password.hash.queue-limit:64}")
+    private int queueLimit;
+
+    @Value("${ip.password.hash.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    @Autowired
+    public void setUserProvider(UserProvider userProvider) {
+        this.userProvider = userProvider;
+    }
+
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        // Default to one thread per core, less one so that hashing can never take every core
+        poolSize = threads > 0 ? threads : Math.max( 1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor( poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>( queueLimit),
+                runnable -> {
+                    Thread thread = new Thread( runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon( true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        hashTimer = Timer.builder( "ip.password.hash")
+                .description( "Time taken to hash a password, excluding time queued")
+                .register( meterRegistry);
+        rejectedCounter = Counter.builder( "ip.password.hash.rejected")
+                .description( "Hashing requests rejected because the queue was full or the wait timed out")
+                .register( meterRegistry);
+        Gauge.builder( "ip.password.hash.queue.depth", executor, e -> e.getQueue().size())
+                .description( "Hashing requests waiting for a thread")
+                .register( meterRegistry);
+        Gauge.builder( "ip.password.hash.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description( "Hashing requests currently being processed")
+                .register( meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hashes a batch of passwords in parallel on the hashing pool, waiting for all of the results. Passwords are
+     *  submitted a pool's worth at a time, so a large batch never floods the queue and starves other callers.
+     * @param passwords The plain text passwords.
+     * @return The hashed passwords, in the same order.
+     * @throws PasswordHashingRejectedException if the hashing pool is saturated, or a hash takes too long.
+     */
+    public List<String> hashAll( List<String> passwords) throws PasswordHashingRejectedException {
+        List<String> result = new ArrayList<>( passwords.size());
+        for ( int i = 0; i < passwords.size(); i += poolSize) {
+            List<Future<String>> futures = new ArrayList<>( poolSize);
+            for ( String password : passwords.subList( i, Math.min( i + poolSize, passwords.size()))) {
+                futures.add( submit( password));
+            }
+            for ( Future<String> future : futures) {
+                result.add( await( future));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Hashes a password on the hashing pool, waiting for the result.
+     * @param password The plain text password.
+     * @return The hashed password, as produced by UserProvider.encryptPassword().
+     * @throws PasswordHashingRejectedException if the hashing pool is saturated, or the hash takes too long.
+     */
+    public String hash( String password) throws PasswordHashingRejectedException {
+        return await( submit( password));
+    }
+
+    private Future<String> submit( String password) {
+        try {
+            return executor.submit( () -> hashTimer.recordCallable( () -> userProvider.encryptPassword( password)));
+        }
+        catch ( RejectedExecutionException ree) {
+            rejectedCounter.increment();
+            throw new PasswordHashingRejectedException( "Password hashing queue is full");
+        }
+    }
+
+    private String await( Future<String> future) {
+        try {
+            return future.get( timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch ( TimeoutException te) {
+            // A hash still in the queue is dropped. One already running can't be stopped, as the KDF never checks for
+            // interruption, so it runs to completion, but nobody waits for it
+            future.cancel( false);
+            rejectedCounter.increment();
+            throw new PasswordHashingRejectedException( "Password hashing timed out", te);
+        }
+        catch ( InterruptedException ie) {
+            future.cancel( false);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingRejectedException( "Interrupted waiting for password hash", ie);
+        }
+        catch ( ExecutionException ee) {
+            if ( ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new IllegalStateException( "Password hashing failed", ee.getCause());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.fujitsu.digital.security;
+
+/**
+ * Thrown when a password can't be hashed because the hashing executor is saturated. Callers should treat this as a
+ *  temporary condition and ask the client to retry later.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    public PasswordHashingRejectedException( String message) {
+        super( message);
+    }
+
+    public PasswordHashingRejectedException( String message, Throwable cause) {
+        super( message, cause);
+    }
+}
@@ -0,0 +1,25 @@
+package com.fujitsu.digital.security;
+
+/**
+ * Backing store for session token revocations, as used by SessionTokenService. The default LocalRevocationStore
+ *  keeps revocations in this JVM, so it can't be used with stateless sessions (ip.session.stateless=true): they use
+ *  the DatabaseRevocationStore (a @Primary bean), shared by every node, so that a signout or disablement on one node
+ *  is honoured by all of them.
+ */
+public interface RevocationStore {
+
+    /**
+     * Revokes every token issued to the user up to (and including) the given time.
+     */
+    void revoke(long userOid, long revokedAtMillis);
+
+    /**
+     * @return The time the user's tokens were last revoked, or 0 if they never have been (or it has been forgotten).
+     */
+    long revokedAt(long userOid);
+
+    /**
+     * Forgets every revocation made before the given time, i.e. once every token it covers has expired anyway.
+     */
+    void evictBefore(long millis);
+}
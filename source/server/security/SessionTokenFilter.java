@@ -0,0 +1,39 @@
+package com.fujitsu.digital.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Authenticates requests carrying a valid X-Auth-Token header (see SessionTokenService), without consulting any
+ *  session. Requests without one, or with an invalid one, pass through unauthenticated.
+ *
+ * This filter belongs in the Spring Security filter chain, after the security context has been loaded, e.g.
+ *  http.addFilterBefore( sessionTokenFilter, UsernamePasswordAuthenticationFilter.class).
+ */
+public class SessionTokenFilter extends OncePerRequestFilter {
+
+    private final SessionTokenService sessionTokenService;
+
+    public SessionTokenFilter( SessionTokenService sessionTokenService) {
+        this.sessionTokenService = sessionTokenService;
+    }
+
+    @Override
+    protected void doFilterInternal( HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String token = request.getHeader( SessionTokenService.HEADER);
+        if ( token != null && !token.isEmpty()) {
+            UsernamePasswordAuthenticationToken authentication = sessionTokenService.authenticate( token);
+            if ( authentication != null) {
+                SecurityContextHolder.getContext().setAuthentication( authentication);
+            }
+        }
+        filterChain.doFilter( request, response);
+    }
+}
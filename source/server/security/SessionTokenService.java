@@ -0,0 +1,282 @@
+package com.fujitsu.digital.security;
+
+import com.fujitsu.digital.domain.dto.UserDTO;
+import com.fujitsu.digital.domain.dto.UserPermissionDTO;
+import com.fujitsu.digital.services.UserRoleLookup;
+import com.fujitsu.digital.services.UserServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Issues and verifies compact, HMAC-SHA256 signed session tokens, for running without server-side sessions (and so
+ *  without sticky sessions or session replication). A token carries the user's oid, username, role id and their
+ *  permission oids (ascending, as a count and then the gaps between them, all as varints, so a token grows with the
+ *  number of permissions rather than their oids), plus its issue and expiry times, so a request can be authenticated
+ *  without a session store or a database hit.
+ *
+ * Tokens can't be recalled once issued, so signout and admin disablement (or a role change) revoke every token
+ *  issued to the user up to the moment the change commits, via the RevocationStore. Revocations are kept only until
+ *  the tokens they cover have expired.
+ *
+ * With stateless sessions enabled (ip.session.stateless=true), every node must share the signing secret
+ *  (ip.session.token.secret), so startup fails without it, and revocations are shared through the
+ *  DatabaseRevocationStore.
+ */
+@Component
+public class SessionTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionTokenService.class);
+
+    public static final String HEADER = "X-Auth-Token";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte FORMAT_VERSION = 2;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private RevocationStore revocationStore;
+    private UserRoleLookup userRoleLookup;
+    private ThreadLocal<Mac> macs;
+
+    // Permission oid -> shared authority instance, learnt from tokens issued here or from the token's role
+    private final ConcurrentMap<Long, UserServiceImpl.PermissionImpl> permissions = new ConcurrentHashMap<>();
+
+    @Value("${ip.session.token.secret:${ip.token.secret:}}")
+    private String secret;
+
+    @Value("${ip.session.token.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    @Value("${ip.session.stateless:false}")
+    private boolean stateless;
+
+    @Autowired
+    public void setRevocationStore(RevocationStore revocationStore) {
+        this.revocationStore = revocationStore;
+    }
+
+    @Autowired
+    public void setUserRoleLookup(UserRoleLookup userRoleLookup) {
+        this.userRoleLookup = userRoleLookup;
+    }
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if ( stateless && ( secret == null || secret.isEmpty())) {
+            throw new IllegalStateException( "ip.session.stateless is set, but ip.session.token.secret is not: every node must sign session tokens with the same secret");
+        }
+        if ( stateless && revocationStore instanceof LocalRevocationStore) {
+            throw new IllegalStateException( "ip.session.stateless is set, but the RevocationStore is the LocalRevocationStore: a signout on one node would not be honoured by the others. Use a shared RevocationStore, e.g. the DatabaseRevocationStore");
+        }
+        if ( secret == null || secret.isEmpty()) {
+            log.warn( "init(); ip.session.token.secret is not set; using a random key, so session tokens will only be accepted by this node, until it restarts");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes( keyBytes);
+        }
+        else {
+            keyBytes = secret.getBytes( StandardCharsets.UTF_8);
+        }
+        SecretKeySpec secretKey = new SecretKeySpec( keyBytes, HMAC_ALGORITHM);
+        macs = ThreadLocal.withInitial( () -> {
+            try {
+                Mac mac = Mac.getInstance( HMAC_ALGORITHM);
+                mac.init( secretKey);
+                return mac;
+            }
+            catch ( GeneralSecurityException e) {
+                throw new IllegalStateException( "Unable to initialise " + HMAC_ALGORITHM, e);
+            }
+        });
+    }
+
+    /**
+     * @param user A signed in user, fully populated (i.e. with role id and permissions).
+     * @return A signed token for the user, to be presented in the X-Auth-Token header of subsequent requests.
+     */
+    public String issue( UserDTO user) {
+        long[] permissionOids = new long[user.getUserPermissions().size()];
+        int count = 0;
+        for ( UserPermissionDTO permission : user.getUserPermissions()) {
+            permissionOids[count++] = permission.getOid();
+            permissions.computeIfAbsent( permission.getOid(), oid -> new UserServiceImpl.PermissionImpl( permission.getName()));
+        }
+        Arrays.sort( permissionOids);
+        long now = System.currentTimeMillis();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream( 64);
+            DataOutputStream out = new DataOutputStream( bytes);
+            out.writeByte( FORMAT_VERSION);
+            out.writeLong( user.getOid());
+            out.writeLong( user.getRoleId() != null ? user.getRoleId() : 0L);
+            out.writeLong( now);
+            out.writeLong( now + ttlSeconds * 1000);
+            out.writeUTF( user.getUsername());
+            writeVarLong( out, permissionOids.length);
+            long previous = 0L;
+            for ( long permissionOid : permissionOids) {
+                writeVarLong( out, permissionOid - previous);
+                previous = permissionOid;
+            }
+            byte[] payload = bytes.toByteArray();
+            return ENCODER.encodeToString( payload) + "." + ENCODER.encodeToString( macs.get().doFinal( payload));
+        }
+        catch ( IOException e) {
+            throw new IllegalStateException( "Unable to write session token", e);
+        }
+    }
+
+    /**
+     * @param token A token, as presented by a client.
+     * @return An authentication equivalent to the one signin would have established, or null if the token is
+     *  malformed, forged, expired or revoked.
+     */
+    public UsernamePasswordAuthenticationToken authenticate( String token) {
+        int separator = token.indexOf( '.');
+        if ( separator < 0) {
+            return null;
+        }
+        try {
+            byte[] payload = DECODER.decode( token.substring( 0, separator));
+            byte[] signature = DECODER.decode( token.substring( separator + 1));
+            if ( !MessageDigest.isEqual( signature, macs.get().doFinal( payload))) {
+                return null;
+            }
+
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload));
+            if ( in.readByte() != FORMAT_VERSION) {
+                return null;
+            }
+            long oid = in.readLong();
+            long roleId = in.readLong();
+            long issuedAt = in.readLong();
+            long expiresAt = in.readLong();
+            String username = in.readUTF();
+            long count = readVarLong( in);
+            if ( count > payload.length) {
+                return null;
+            }
+            long[] permissionOids = new long[(int) count];
+            long previous = 0L;
+            for ( int i = 0; i < permissionOids.length; i++) {
+                previous += readVarLong( in);
+                permissionOids[i] = previous;
+            }
+            if ( expiresAt < System.currentTimeMillis() || issuedAt <= revocationStore.revokedAt( oid)) {
+                return null;
+            }
+            return authentication( oid, roleId, username, permissionOids);
+        }
+        catch ( IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Revokes every token issued to the user so far, e.g. on signout or when the user is disabled. Within a
+     *  transaction, the revocation is made once it commits: tokens issued before then still carry the old details,
+     *  and a rolled back change leaves the tokens alone.
+     */
+    public void revoke( Long userOid) {
+        if ( userOid == null) {
+            return;
+        }
+        if ( TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    revocationStore.revoke( userOid, System.currentTimeMillis());
+                }
+            });
+        }
+        else {
+            revocationStore.revoke( userOid, System.currentTimeMillis());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ip.session.token.revocation-purge-ms:300000}")
+    public void purgeRevocations() {
+        revocationStore.evictBefore( System.currentTimeMillis() - ttlSeconds * 1000);
+    }
+
+    private UsernamePasswordAuthenticationToken authentication( long oid, long roleId, String username, long[] permissionOids) {
+        List<UserServiceImpl.Permission> authorities = new ArrayList<>( permissionOids.length);
+        List<UserPermissionDTO> permissionDTOs = new ArrayList<>( permissionOids.length);
+        for ( long permissionOid : permissionOids) {
+            UserServiceImpl.PermissionImpl permission = permission( permissionOid, roleId);
+            if ( permission != null) {
+                authorities.add( permission);
+                permissionDTOs.add( new UserPermissionDTO( permissionOid, permission.getName()));
+            }
+        }
+
+        UserDTO user = new UserDTO();
+        user.setOid( oid);
+        user.setUsername( username);
+        user.setRoleId( roleId != 0L ? roleId : null);
+        user.setActive( true);
+        user.setUserPermissions( permissionDTOs);
+        UsernamePasswordAuthenticationToken result = new UsernamePasswordAuthenticationToken( username, null, authorities);
+        result.setDetails( user);
+        return result;
+    }
+
+    private UserServiceImpl.PermissionImpl permission( Long permissionOid, long roleId) {
+        UserServiceImpl.PermissionImpl result = permissions.get( permissionOid);
+        if ( result == null && roleId != 0L) {
+            // Not seen on this node yet: learn the names of the role's permissions (a cached lookup)
+            UserRoleLookup.RoleSnapshot role = userRoleLookup.find( roleId);
+            if ( role != null) {
+                role.getPermissionNames().forEach( ( oid, name) -> permissions.putIfAbsent( oid, new UserServiceImpl.PermissionImpl( name)));
+            }
+            result = permissions.get( permissionOid);
+        }
+        return result;
+    }
+
+    private static void writeVarLong( DataOutputStream out, long value) throws IOException {
+        while ( ( value & ~0x7FL) != 0) {
+            out.writeByte( (int) ( value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte( (int) value);
+    }
+
+    private static long readVarLong( DataInputStream in) throws IOException {
+        long result = 0L;
+        for ( int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) ( b & 0x7F) << shift;
+            if ( ( b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException( "Malformed varint");
+    }
+}
@@ -0,0 +1,96 @@
+package com.fujitsu.digital.security;
+
+import com.fujitsu.digital.domain.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits failed sign-in attempts per username and per client address, over a sliding window. Checked before any
+ *  password hashing or database work, so a credential-stuffing burst is turned away cheaply.
+ *
+ * A username is throttled separately for each client address that fails to sign in as it, so that someone who knows
+ *  a username can't lock its owner out with a handful of bad passwords from their own address. Failures for the
+ *  username from all addresses together are also limited, but to a much higher count, to slow a guessing attack
+ *  spread across many addresses.
+ *
+ * The sliding window is approximated from two fixed windows: the current window's count, plus the previous window's
+ *  count weighted by how much of it still overlaps the sliding window.
+ */
+@Component
+public class SigninThrottle {
+
+    private static final String USERNAME_PREFIX = "u:";
+    private static final String USERNAME_ADDRESS_PREFIX = "ua:";
+    private static final String ADDRESS_PREFIX = "a:";
+
+    private ThrottleStore throttleStore;
+
+    @Value("${ip.signin.throttle.window-ms:900000}")
+    private long windowMillis;
+
+    // Per username, from any one address
+    @Value("${ip.signin.throttle.max-username-failures:5}")
+    private long maxUsernameFailures;
+
+    // Per username, from all addresses together
+    @Value("${ip.signin.throttle.max-username-failures-all-addresses:100}")
+    private long maxUsernameFailuresAllAddresses;
+
+    @Value("${ip.signin.throttle.max-address-failures:50}")
+    private long maxAddressFailures;
+
+    @Autowired
+    public void setThrottleStore(ThrottleStore throttleStore) {
+        this.throttleStore = throttleStore;
+    }
+
+    /**
+     * @return true if the username (from this client address, or from all addresses) or the client address has had
+     *  too many recent failed sign-ins.
+     */
+    public boolean isBlocked( String username, String clientAddress) {
+        long now = System.currentTimeMillis();
+        if ( username != null) {
+            String usernameLookup = User.normaliseUsername( username);
+            if ( estimate( USERNAME_ADDRESS_PREFIX + usernameLookup + "|" + clientAddress, now) >= maxUsernameFailures
+                    || estimate( USERNAME_PREFIX + usernameLookup, now) >= maxUsernameFailuresAllAddresses) {
+                return true;
+            }
+        }
+        return clientAddress != null && estimate( ADDRESS_PREFIX + clientAddress, now) >= maxAddressFailures;
+    }
+
+    public void recordFailure( String username, String clientAddress) {
+        long windowId = System.currentTimeMillis() / windowMillis;
+        if ( username != null) {
+            String usernameLookup = User.normaliseUsername( username);
+            throttleStore.increment( USERNAME_ADDRESS_PREFIX + usernameLookup + "|" + clientAddress, windowId);
+            throttleStore.increment( USERNAME_PREFIX + usernameLookup, windowId);
+        }
+        if ( clientAddress != null) {
+            throttleStore.increment( ADDRESS_PREFIX + clientAddress, windowId);
+        }
+    }
+
+    public void recordSuccess( String username, String clientAddress) {
+        if ( username != null) {
+            String usernameLookup = User.normaliseUsername( username);
+            throttleStore.reset( USERNAME_ADDRESS_PREFIX + usernameLookup + "|" + clientAddress);
+            throttleStore.reset( USERNAME_PREFIX + usernameLookup);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ip.signin.throttle.evict-ms:60000}")
+    public void evictIdle() {
+        // Anything older than the previous window no longer contributes to any estimate
+        throttleStore.evictIdle( System.currentTimeMillis() / windowMillis - 1);
+    }
+
+    private double estimate( String key, long now) {
+        long windowId = now / windowMillis;
+        double elapsed = (double) ( now % windowMillis) / windowMillis;
+        return throttleStore.get( key, windowId) + throttleStore.get( key, windowId - 1) * ( 1.0 - elapsed);
+    }
+}
@@ -0,0 +1,27 @@
+package com.fujitsu.digital.security;
+
+/**
+ * Backing store for fixed-window event counters, as used by SigninThrottle and AvailabilityThrottle. The default
+ *  LocalThrottleStore keeps counts in this JVM; an implementation backed by a shared store can be supplied (as a
+ *  @Primary bean) so that all nodes see the same counts.
+ */
+public interface ThrottleStore {
+
+    /**
+     * Counts one event against a key in the given window.
+     * @return The key's count for that window, including this event.
+     */
+    long increment(String key, long windowId);
+
+    /**
+     * @return The key's count for the given window, or 0 if it has none.
+     */
+    long get(String key, long windowId);
+
+    void reset(String key);
+
+    /**
+     * Forgets every key that has had no events in or since the given window.
+     */
+    void evictIdle(long oldestWindowId);
+}
@@ -0,0 +1,169 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.EmailOutbox;
+import com.fujitsu.digital.utils.ConfigCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Coalesces administrator notifications (new registrations, verification requests, verifications) into periodic
+ *  digests, rather than emailing every admin about every single event. Events are buffered in memory per email
+ *  template, and each buffer is flushed as one summary email when it reaches the configured batch size, when its
+ *  oldest event reaches the configured age, or when the application shuts down. A digest whose lines wouldn't fit in
+ *  one outbox message (EMAIL_OUTBOX.CONTENT) is split over as many emails as it needs.
+ */
+@Component
+public class AdminNotificationDigest {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminNotificationDigest.class);
+
+    private static final String LINE_SEPARATOR = ", ";
+    private static final int LINE_SEPARATOR_BYTES = LINE_SEPARATOR.getBytes( StandardCharsets.UTF_8).length;
+
+    private final Map<String, Digest> digests = new ConcurrentHashMap<>();
+
+    private NotificationService notificationService;
+    private ConfigCache configCache;
+
+    @Value("${ip.email.digest.window-ms:900000}")
+    private long windowMillis;
+
+    @Value("${ip.email.digest.batch-size:50}")
+    private int batchSize;
+
+    @Autowired
+    public void setNotificationService(NotificationService notificationService) {
+        this.notificationService = notificationService;
+    }
+
+    @Autowired
+    public void setConfigCache(ConfigCache configCache) {
+        this.configCache = configCache;
+    }
+
+    /**
+     * Records an admin notification event for inclusion in the next digest. When called inside a transaction, the
+     *  event is only recorded once (and if) that transaction commits.
+     * @param subject The subject used for the digest email.
+     * @param line A one-line description of the event, e.g. the user's name and email address.
+     * @param templateName The admin email template name.
+     */
+    public void record( String subject, String line, String templateName) {
+        if ( TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    append( subject, line, templateName);
+                }
+            });
+        }
+        else {
+            append( subject, line, templateName);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ip.email.digest.poll-ms:5000}")
+    public void flushDue() {
+        long now = System.currentTimeMillis();
+        for ( Map.Entry<String, Digest> entry : digests.entrySet()) {
+            Event oldest = entry.getValue().events.peek();
+            if ( oldest != null && ( entry.getValue().events.size() >= batchSize || now - oldest.recordedAt >= windowMillis)) {
+                flush( entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        for ( Map.Entry<String, Digest> entry : digests.entrySet()) {
+            flush( entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void append( String subject, String line, String templateName) {
+        digests.computeIfAbsent( templateName, key -> new Digest( subject)).events.add( new Event( line));
+    }
+
+    private void flush( String templateName, Digest digest) {
+        List<String> lines = new ArrayList<>( batchSize);
+        int contentBytes = 0;
+        Event event;
+        while ( ( event = digest.events.poll()) != null) {
+            String line = fit( event.line);
+            int lineBytes = line.getBytes( StandardCharsets.UTF_8).length;
+            if ( !lines.isEmpty() && contentBytes + LINE_SEPARATOR_BYTES + lineBytes > EmailOutbox.CONTENT_LENGTH) {
+                send( templateName, digest.subject, lines);
+                lines.clear();
+            }
+            contentBytes = lines.isEmpty() ? lineBytes : contentBytes + LINE_SEPARATOR_BYTES + lineBytes;
+            lines.add( line);
+            if ( lines.size() >= batchSize) {
+                send( templateName, digest.subject, lines);
+                lines.clear();
+            }
+        }
+        if ( !lines.isEmpty()) {
+            send( templateName, digest.subject, lines);
+        }
+    }
+
+    /**
+     * @return The line, cut short if it couldn't fit in an outbox message even on its own.
+     */
+    private static String fit( String line) {
+        if ( line.getBytes( StandardCharsets.UTF_8).length <= EmailOutbox.CONTENT_LENGTH) {
+            return line;
+        }
+        int end = Math.min( line.length(), EmailOutbox.CONTENT_LENGTH);
+        while ( line.substring( 0, end).getBytes( StandardCharsets.UTF_8).length > EmailOutbox.CONTENT_LENGTH) {
+            end--;
+        }
+        if ( end > 0 && Character.isHighSurrogate( line.charAt( end - 1))) {
+            end--;
+        }
+        return line.substring( 0, end);
+    }
+
+    private void send( String templateName, String subject, List<String> lines) {
+        // A digest of one reads exactly like the old per-event email
+        String digestSubject = lines.size() > 1 ? subject + " (" + lines.size() + ")" : subject;
+        try {
+            notificationService.queue( configCache.emailAdminArray(), digestSubject, String.join( LINE_SEPARATOR, lines), templateName);
+        }
+        catch ( RuntimeException e) {
+            log.error( "send(); failed to queue {} digest of {} events", templateName, lines.size(), e);
+        }
+    }
+
+    private static class Digest {
+        final String subject;
+        final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<>();
+
+        Digest( String subject) {
+            this.subject = subject;
+        }
+    }
+
+    private static class Event {
+        final String line;
+        final long recordedAt = System.currentTimeMillis();
+
+        Event( String line) {
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.config.CacheConfig;
+import com.fujitsu.digital.domain.dto.UserChangeDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evicts changed users from this node's users cache. Saves made on this node evict their own entries as they
+ *  commit; this catches the rest (bulk updates, and other nodes' saves) from the change feed, so a user cached here
+ *  is at most one pass of UserChangeFeedFollower out of date.
+ */
+@Component
+public class CachedUserEvictor implements UserChangeFeedFollower.Listener {
+
+    private Cache usersCache;
+
+    @Autowired(required = false)
+    public void setCacheManager(CacheManager cacheManager) {
+        this.usersCache = cacheManager.getCache( CacheConfig.USERS);
+    }
+
+    @Override
+    public void onUserChanged( UserChangeDTO user) {
+        if ( usersCache != null) {
+            usersCache.evict( user.getOid());
+        }
+    }
+}
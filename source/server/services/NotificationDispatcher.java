@@ -0,0 +1,196 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.EmailOutbox;
+import com.fujitsu.digital.repositories.EmailOutboxRepository;
+import com.fujitsu.digital.utils.EmailSender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Delivers queued EMAIL_OUTBOX messages on a small, bounded pool of worker threads, away from the request threads
+ *  (and database connections) that created them.
+ *
+ * Messages are normally handed over straight after commit. Anything that can't be handed over (pool saturated, node
+ *  restarted, mail server down) stays PENDING and is picked up by the periodic sweep. Failed sends are retried with
+ *  exponential backoff until the attempt limit is reached, at which point the message is parked as FAILED.
+ *
+ * A message's content (which may hold a live verification or reset token) is cleared as soon as it is SENT or
+ *  FAILED, and finished messages are purged once they are older than the retention period.
+ */
+@Component
+public class NotificationDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    // Beyond this many doublings the backoff is capped by max-backoff-seconds anyway, and the shift could overflow
+    private static final int MAX_BACKOFF_DOUBLINGS = 20;
+
+    private EmailOutboxRepository emailOutboxRepository;
+    private EmailSender emailSender;
+    private ThreadPoolTaskExecutor emailExecutor;
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${ip.email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${ip.email.outbox.backoff-seconds:30}")
+    private long backoffSeconds;
+
+    @Value("${ip.email.outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    @Value("${ip.email.outbox.retention-days:7}")
+    private long retentionDays;
+
+    @Value("${ip.email.outbox.sweep-size:100}")
+    private int sweepSize;
+
+    @Value("${ip.email.outbox.stale-minutes:10}")
+    private long staleMinutes;
+
+    @Autowired
+    public void setEmailOutboxRepository(EmailOutboxRepository emailOutboxRepository) {
+        this.emailOutboxRepository = emailOutboxRepository;
+    }
+
+    @Autowired
+    public void setEmailSender(EmailSender emailSender) {
+        this.emailSender = emailSender;
+    }
+
+    @Autowired
+    public void setEmailExecutor(@Qualifier("emailExecutor") ThreadPoolTaskExecutor emailExecutor) {
+        this.emailExecutor = emailExecutor;
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate( transactionManager);
+    }
+
+    /**
+     * Schedules delivery of a single, already committed, message. Never blocks the caller; if the worker pool is
+     *  saturated the message is simply left for the next sweep.
+     * @param oid The EMAIL_OUTBOX id of the message.
+     */
+    public void dispatchLater( Long oid) {
+        try {
+            emailExecutor.execute( () -> dispatch( oid));
+        }
+        catch ( TaskRejectedException tre) {
+            log.debug( "dispatchLater(); pool saturated, deferring message {} to the next sweep", oid);
+        }
+    }
+
+    /**
+     * Periodically picks up due messages: new ones we couldn't hand over immediately, and retries whose backoff has
+     *  expired.
+     */
+    @Scheduled(fixedDelayString = "${ip.email.outbox.sweep-ms:30000}")
+    public void sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> dueIds = transactionTemplate.execute( status -> {
+            emailOutboxRepository.releaseStale( now.minusMinutes( staleMinutes));
+            return emailOutboxRepository.findDueIds( now, PageRequest.of( 0, sweepSize));
+        });
+        for ( Long oid : dueIds) {
+            dispatchLater( oid);
+        }
+    }
+
+    /**
+     * Deletes sent and failed messages once they are older than the retention period.
+     */
+    @Scheduled(cron = "${ip.email.outbox.purge-cron:0 45 3 * * *}")
+    public void purgeFinished() {
+        Integer purged = transactionTemplate.execute( status -> emailOutboxRepository.deleteFinishedBefore( LocalDateTime.now().minusDays( retentionDays)));
+        log.info( "purgeFinished(); purged {} finished messages", purged);
+    }
+
+    void dispatch( Long oid) {
+        // Claim the message first, in its own short transaction, so that competing dispatchers (this node's sweep,
+        // or another node's) never send the same message twice
+        EmailOutbox message = transactionTemplate.execute( status -> {
+            if ( emailOutboxRepository.claim( oid, LocalDateTime.now()) == 0) {
+                return null;
+            }
+            return emailOutboxRepository.findById( oid).orElse( null);
+        });
+        if ( message == null) {
+            return;
+        }
+
+        // Talk to the mail server outside of any transaction
+        String error = null;
+        try {
+            send( message);
+        }
+        catch ( RuntimeException e) {
+            log.warn( "dispatch(); failed to send message {} (attempt {}): {}", oid, message.getAttempts() + 1, e.getMessage());
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+        }
+        complete( oid, error);
+    }
+
+    private void send( EmailOutbox message) {
+        String[] recipients = message.getRecipientArray();
+        if ( recipients.length > 1) {
+            emailSender.sendHTMLMessage( recipients, message.getSubject(), message.getContent(), message.getTemplateName());
+        }
+        else if ( message.getContent() != null) {
+            emailSender.sendHTMLMessage( recipients[0], message.getSubject(), message.getContent(), message.getTemplateName());
+        }
+        else {
+            emailSender.sendHTMLMessage( recipients[0], message.getSubject(), message.getTemplateName());
+        }
+    }
+
+    private void complete( Long oid, String error) {
+        transactionTemplate.execute( status -> {
+            emailOutboxRepository.findById( oid).ifPresent( message -> {
+                LocalDateTime now = LocalDateTime.now();
+                int attempts = message.getAttempts() + 1;
+                message.setAttempts( attempts);
+                message.setUpdatedDate( now);
+                if ( error == null) {
+                    // The content is no longer needed, and may hold a live token, so it isn't kept at rest
+                    message.setStatus( EmailOutbox.Status.SENT);
+                    message.setContent( null);
+                    message.setLastError( null);
+                }
+                else if ( attempts >= maxAttempts) {
+                    message.setStatus( EmailOutbox.Status.FAILED);
+                    message.setContent( null);
+                    message.setLastError( truncate( error));
+                    log.error( "complete(); giving up on message {} after {} attempts", oid, attempts);
+                }
+                else {
+                    // Exponential backoff: 1x, 2x, 4x, 8x... the base delay, up to the maximum
+                    long delaySeconds = Math.min( maxBackoffSeconds, backoffSeconds << Math.min( attempts - 1, MAX_BACKOFF_DOUBLINGS));
+                    message.setStatus( EmailOutbox.Status.PENDING);
+                    message.setLastError( truncate( error));
+                    message.setNextAttemptDate( now.plusSeconds( delaySeconds));
+                }
+                emailOutboxRepository.save( message);
+            });
+            return null;
+        });
+    }
+
+    private String truncate( String error) {
+        return error.length() > 1000 ? error.substring( 0, 1000) : error;
+    }
+}
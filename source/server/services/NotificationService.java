@@ -0,0 +1,8 @@
+package com.fujitsu.digital.services;
+
+public interface NotificationService {
+
+    void queue(String recipient, String subject, String templateName);
+    void queue(String recipient, String subject, String content, String templateName);
+    void queue(String[] recipients, String subject, String content, String templateName);
+}
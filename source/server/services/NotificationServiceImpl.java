@@ -0,0 +1,74 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.EmailOutbox;
+import com.fujitsu.digital.repositories.EmailOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+/**
+ * Writes outgoing email notifications to the EMAIL_OUTBOX table rather than talking to the mail server directly. The
+ *  row is written in the caller's transaction, so a notification exists if (and only if) the business change that
+ *  triggered it was committed. Actual delivery is left to the NotificationDispatcher once the transaction commits.
+ */
+@Service(value="notificationService")
+@Transactional
+public class NotificationServiceImpl implements NotificationService {
+
+    private EmailOutboxRepository emailOutboxRepository;
+    private NotificationDispatcher notificationDispatcher;
+
+    @Autowired
+    public void setEmailOutboxRepository(EmailOutboxRepository emailOutboxRepository) {
+        this.emailOutboxRepository = emailOutboxRepository;
+    }
+
+    @Autowired
+    public void setNotificationDispatcher(NotificationDispatcher notificationDispatcher) {
+        this.notificationDispatcher = notificationDispatcher;
+    }
+
+    @Override
+    public void queue( String recipient, String subject, String templateName) {
+        queue( new String[] { recipient }, subject, null, templateName);
+    }
+
+    @Override
+    public void queue( String recipient, String subject, String content, String templateName) {
+        queue( new String[] { recipient }, subject, content, templateName);
+    }
+
+    @Override
+    public void queue( String[] recipients, String subject, String content, String templateName) {
+        LocalDateTime now = LocalDateTime.now();
+        EmailOutbox message = new EmailOutbox();
+        message.setRecipientArray( recipients);
+        message.setSubject( subject);
+        message.setContent( content);
+        message.setTemplateName( templateName);
+        message.setStatus( EmailOutbox.Status.PENDING);
+        message.setAttempts( 0);
+        message.setNextAttemptDate( now);
+        message.setCreatedDate( now);
+        message.setUpdatedDate( now);
+        Long oid = emailOutboxRepository.save( message).getOid();
+
+        // Hand the message to the dispatcher only once the surrounding transaction has committed. Until then the
+        // row isn't visible to the dispatcher's own transaction anyway, and if we roll back it must never be sent
+        if ( TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    notificationDispatcher.dispatchLater( oid);
+                }
+            });
+        }
+        else {
+            notificationDispatcher.dispatchLater( oid);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.utils.ConfigCache;
+import com.fujitsu.digital.utils.EmailDomainMatcher;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the compiled form (EmailDomainMatcher) of the registration email matcher list, configCache.regEmailMatcherList().
+ *
+ * Checking the config list on every match would cost as much as the match itself, so the compiled matcher is kept
+ *  until the config is saved through its service on this node, and is otherwise recompiled at most every
+ *  ip.registration.email-matcher.refresh-ms, to pick up config changes made on other nodes.
+ */
+@Aspect
+@Component
+public class RegistrationEmailMatcher {
+
+    private ConfigCache configCache;
+
+    // Replaced whole, so readers never see a half-built matcher. Concurrent callers may each compile a copy, but every
+    // copy is equivalent, so whichever is published last is as good as any other
+    private volatile Compiled compiled;
+
+    @Value("${ip.registration.email-matcher.refresh-ms:60000}")
+    private long refreshMillis;
+
+    @Autowired
+    public void setConfigCache(ConfigCache configCache) {
+        this.configCache = configCache;
+    }
+
+    /**
+     * @param emailAddress An email address, already trimmed and in lower case.
+     * @return true if the address ends with any of the configured matchers.
+     */
+    public boolean matches( String emailAddress) {
+        long now = System.currentTimeMillis();
+        Compiled current = compiled;
+        if ( current == null || now - current.compiledAt >= refreshMillis) {
+            current = new Compiled( EmailDomainMatcher.compile( configCache.regEmailMatcherList()), now);
+            compiled = current;
+        }
+        return current.matcher.matches( emailAddress);
+    }
+
+    /**
+     * Discards the compiled matcher when the config is changed. We discard immediately, and again once the change
+     *  commits, so that a matcher compiled from the old config in between doesn't survive.
+     */
+    @AfterReturning("execution(* com.fujitsu.digital.services.*ConfigService*.save*(..)) || " +
+            "execution(* com.fujitsu.digital.services.*ConfigService*.delete*(..))")
+    public void onConfigChanged() {
+        compiled = null;
+        if ( TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    compiled = null;
+                }
+            });
+        }
+    }
+
+    private static final class Compiled {
+        private final EmailDomainMatcher matcher;
+        private final long compiledAt;
+
+        Compiled( EmailDomainMatcher matcher, long compiledAt) {
+            this.matcher = matcher;
+            this.compiledAt = compiledAt;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.UserToken;
+
+import java.util.List;
+
+public interface TokenService {
+
+    String issueToken(User user, UserToken.Purpose purpose);
+    List<String> issueTokens(List<User> users, UserToken.Purpose purpose);
+    User findUser(String token, UserToken.Purpose purpose);
+    void revokeTokens(User user, UserToken.Purpose purpose);
+}
@@ -0,0 +1,166 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.UserToken;
+import com.fujitsu.digital.repositories.UserTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Issues and redeems the one-time tokens emailed to users (registration verification, password reset).
+ *
+ * Tokens are random UUIDs, and so don't need a slow password KDF to protect them at rest: they are stored as an
+ *  HMAC-SHA256 digest under a server-side secret, which costs microseconds to compute and can be looked up directly
+ *  by its unique index. Each token has an expiry date, and expired tokens are purged on a schedule.
+ */
+@Service(value="tokenService")
+@Transactional
+public class TokenServiceImpl implements TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenServiceImpl.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int DELETE_CHUNK_SIZE = 500;
+
+    private UserTokenRepository userTokenRepository;
+    private SecretKeySpec secretKey;
+    private ThreadLocal<Mac> macs;
+
+    @Value("${ip.token.secret:}")
+    private String secret;
+
+    @Value("${ip.token.verification.expiry-hours:168}")
+    private long verificationExpiryHours;
+
+    @Value("${ip.token.reset.expiry-hours:24}")
+    private long resetExpiryHours;
+
+    @Autowired
+    public void setUserTokenRepository(UserTokenRepository userTokenRepository) {
+        this.userTokenRepository = userTokenRepository;
+    }
+
+    /**
+     * The secret is required: with a key of its own, a node could redeem neither the tokens issued by the others nor
+     *  (after a restart) its own, and every outstanding verification and reset link would stop working.
+     */
+    @PostConstruct
+    public void init() {
+        if ( secret == null || secret.isEmpty()) {
+            throw new IllegalStateException( "ip.token.secret is not set: every node must digest emailed tokens with the same secret");
+        }
+        secretKey = new SecretKeySpec( secret.getBytes( StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        macs = ThreadLocal.withInitial( () -> {
+            try {
+                Mac mac = Mac.getInstance( HMAC_ALGORITHM);
+                mac.init( secretKey);
+                return mac;
+            }
+            catch ( GeneralSecurityException e) {
+                throw new IllegalStateException( "Unable to initialise " + HMAC_ALGORITHM, e);
+            }
+        });
+    }
+
+    /**
+     * Issues a new token, replacing any outstanding token the user has for the same purpose.
+     * @param user The (persisted) user the token is for.
+     * @param purpose What the token may be used for.
+     * @return The raw token, for inclusion in an email. It is not stored anywhere and can't be recovered later.
+     */
+    @Override
+    public String issueToken( User user, UserToken.Purpose purpose) {
+        userTokenRepository.deleteByUserAndPurpose( user, purpose);
+
+        String token = UUID.randomUUID().toString();
+        userTokenRepository.save( newUserToken( user, purpose, token, LocalDateTime.now()));
+        return token;
+    }
+
+    /**
+     * As issueToken(), for many users at once: their outstanding tokens are deleted with one statement per chunk of
+     *  users, rather than one per user (each of which would flush the persistence context), and the new tokens are
+     *  saved together, so they can be inserted in JDBC batches.
+     * @param users The (persisted) users the tokens are for.
+     * @param purpose What the tokens may be used for.
+     * @return The raw tokens, in the same order as the users.
+     */
+    @Override
+    public List<String> issueTokens( List<User> users, UserToken.Purpose purpose) {
+        for ( int i = 0; i < users.size(); i += DELETE_CHUNK_SIZE) {
+            userTokenRepository.deleteByUsersAndPurpose( users.subList( i, Math.min( i + DELETE_CHUNK_SIZE, users.size())), purpose);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<String> result = new ArrayList<>( users.size());
+        List<UserToken> userTokens = new ArrayList<>( users.size());
+        for ( User user : users) {
+            String token = UUID.randomUUID().toString();
+            result.add( token);
+            userTokens.add( newUserToken( user, purpose, token, now));
+        }
+        userTokenRepository.saveAll( userTokens);
+        return result;
+    }
+
+    private UserToken newUserToken( User user, UserToken.Purpose purpose, String token, LocalDateTime now) {
+        UserToken result = new UserToken();
+        result.setUser( user);
+        result.setPurpose( purpose);
+        result.setDigest( digest( token));
+        result.setExpiryDate( now.plusHours( purpose == UserToken.Purpose.RESET ? resetExpiryHours : verificationExpiryHours));
+        result.setCreatedDate( now);
+        return result;
+    }
+
+    /**
+     * @param token A raw token, as supplied by the user.
+     * @param purpose What the token is being used for.
+     * @return The user the token was issued to, or null if the token is unknown, expired, or for another purpose.
+     */
+    @Override
+    public User findUser( String token, UserToken.Purpose purpose) {
+        if ( token == null || token.isEmpty()) {
+            return null;
+        }
+        UserToken userToken = userTokenRepository.findValid( digest( token), purpose, LocalDateTime.now());
+        return userToken != null ? userToken.getUser() : null;
+    }
+
+    @Override
+    public void revokeTokens( User user, UserToken.Purpose purpose) {
+        userTokenRepository.deleteByUserAndPurpose( user, purpose);
+    }
+
+    @Scheduled(cron = "${ip.token.purge-cron:0 15 3 * * *}")
+    public void purgeExpired() {
+        int purged = userTokenRepository.deleteExpired( LocalDateTime.now());
+        log.info( "purgeExpired(); purged {} expired tokens", purged);
+    }
+
+    private String digest( String token) {
+        byte[] digest = macs.get().doFinal( token.getBytes( StandardCharsets.UTF_8));
+        char[] hex = new char[digest.length * 2];
+        for ( int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[( digest[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0f];
+        }
+        return new String( hex);
+    }
+}
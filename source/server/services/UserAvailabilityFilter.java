@@ -0,0 +1,86 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.dto.UserChangeDTO;
+import com.fujitsu.digital.utils.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+
+/**
+ * Bloom filters of every registered (normalised) username and email address, so that registration can tell a
+ *  definitely-new name apart from a possibly-taken one without a query. Only possibly-taken names need an indexed
+ *  existence check, and that check is made before any password hashing.
+ *
+ * The filters are built at startup and kept current by UserChangeFeedFollower. Until they are built, every name is
+ *  reported as possibly taken. Names are never removed (a renamed user's old name just becomes a false positive), and
+ *  the database's unique constraints remain the final word.
+ */
+@Component
+public class UserAvailabilityFilter implements UserChangeFeedFollower.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(UserAvailabilityFilter.class);
+
+    private BloomFilter usernames;
+    private BloomFilter emailAddresses;
+
+    private volatile boolean loaded;
+
+    @Value("${ip.users.availability.expected-users:200000}")
+    private long expectedUsers;
+
+    @Value("${ip.users.availability.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @PostConstruct
+    public void init() {
+        usernames = BloomFilter.create( expectedUsers, falsePositiveRate);
+        emailAddresses = BloomFilter.create( expectedUsers, falsePositiveRate);
+    }
+
+    /**
+     * @param username A username as entered by a user.
+     * @return false if the username is definitely not registered; true if it may be.
+     */
+    public boolean mightBeTakenUsername( String username) {
+        return !loaded || usernames.mightContain( User.normaliseUsername( username));
+    }
+
+    /**
+     * @param emailAddress An email address as entered by a user.
+     * @return false if the email address is definitely not registered; true if it may be.
+     */
+    public boolean mightBeTakenEmailAddress( String emailAddress) {
+        return !loaded || emailAddresses.mightContain( normaliseEmailAddress( emailAddress));
+    }
+
+    @Override
+    public void onUserChanged( UserChangeDTO user) {
+        add( user.getUsername(), user.getEmailAddress());
+    }
+
+    @Override
+    public void onRefreshed( boolean initial, int count) {
+        if ( initial && count > expectedUsers) {
+            log.warn( "onRefreshed(); {} users exceeds ip.users.availability.expected-users ({}); false positives will be more frequent", count, expectedUsers);
+        }
+        loaded = true;
+    }
+
+    private void add( String username, String emailAddress) {
+        if ( username != null) {
+            usernames.put( User.normaliseUsername( username));
+        }
+        if ( emailAddress != null) {
+            emailAddresses.put( normaliseEmailAddress( emailAddress));
+        }
+    }
+
+    private static String normaliseEmailAddress( String emailAddress) {
+        return emailAddress.trim().toLowerCase( Locale.ROOT);
+    }
+}
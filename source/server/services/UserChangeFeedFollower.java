@@ -0,0 +1,125 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.dto.UserChangeDTO;
+import com.fujitsu.digital.repositories.UserRepository;
+import com.fujitsu.digital.utils.ReadYourWrites;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the in-memory views of the user table (UserSearchIndex, UserAvailabilityFilter, UserPermissionIndex, and any
+ *  other Listener) current, from one read of the table for all of them.
+ *
+ * Every user is read once at startup, and then the change feed (users in updatedDate, oid order) is followed
+ *  periodically from the last pass, to pick up bulk updates and other nodes' writes. Users saved on this node are
+ *  passed on as soon as they commit (UserServiceImpl publishes each as a UserChangeDTO). Changes committed within
+ *  the settle window may not be visible yet, so each pass stops short of it and the next re-reads it; and the feed
+ *  is read from the primary, since the settle window doesn't cover replication lag, and a change missed by one pass
+ *  would be missed for good.
+ */
+@Component
+public class UserChangeFeedFollower {
+
+    private static final Logger log = LoggerFactory.getLogger(UserChangeFeedFollower.class);
+
+    private static final int PAGE_SIZE = 5000;
+
+    /**
+     * An in-memory view of the user table.
+     */
+    public interface Listener {
+
+        /**
+         * A user as created or last saved, from the change feed or a save on this node. The same user may be passed
+         *  more than once, and an older state may follow a newer one from the other source, so applying it must be
+         *  idempotent; the next pass over the feed brings every user back to their latest state.
+         */
+        void onUserChanged( UserChangeDTO user);
+
+        /**
+         * Called after each pass over the feed, still within it, so any reads made here go to the primary too.
+         * @param initial true after the first pass, which covered every user.
+         * @param count The number of users read by the pass.
+         */
+        default void onRefreshed( boolean initial, int count) {
+        }
+    }
+
+    private UserRepository userRepository;
+    private ReadYourWrites readYourWrites;
+    private List<Listener> listeners = Collections.emptyList();
+
+    private final Object refreshLock = new Object();
+    private LocalDateTime refreshedUntil;
+
+    @Value("${ip.users.changes.settle-seconds:5}")
+    private long settleSeconds;
+
+    @Autowired
+    public void setUserRepository(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Autowired
+    public void setReadYourWrites(ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Autowired(required = false)
+    public void setListeners(List<Listener> listeners) {
+        this.listeners = listeners;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${ip.users.changes.follow-ms:30000}", initialDelayString = "${ip.users.changes.follow-ms:30000}")
+    public void refresh() {
+        readYourWrites.runOnPrimary( this::refreshFromPrimary);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserSaved( UserChangeDTO user) {
+        listeners.forEach( listener -> listener.onUserChanged( user));
+    }
+
+    private void refreshFromPrimary() {
+        synchronized ( refreshLock) {
+            boolean initial = refreshedUntil == null;
+            LocalDateTime until = LocalDateTime.now().minusSeconds( settleSeconds);
+            int count = 0;
+            List<UserChangeDTO> page = initial
+                    ? userRepository.findUserChangesFirst( until, PageRequest.of( 0, PAGE_SIZE))
+                    : userRepository.findUserChangesSince( refreshedUntil, Long.MIN_VALUE, until, PageRequest.of( 0, PAGE_SIZE));
+            while ( !page.isEmpty()) {
+                for ( UserChangeDTO user : page) {
+                    listeners.forEach( listener -> listener.onUserChanged( user));
+                }
+                count += page.size();
+                UserChangeDTO last = page.get( page.size() - 1);
+                page = userRepository.findUserChangesSince( last.getUpdatedDate(), last.getOid(), until, PageRequest.of( 0, PAGE_SIZE));
+            }
+            if ( initial) {
+                log.info( "refresh(); read {} users for {} listeners", count, listeners.size());
+            }
+            refreshedUntil = until;
+            for ( Listener listener : listeners) {
+                listener.onRefreshed( initial, count);
+            }
+        }
+    }
+}
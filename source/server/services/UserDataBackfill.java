@@ -0,0 +1,111 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.UserToken;
+import com.fujitsu.digital.repositories.UserRepository;
+import com.fujitsu.digital.utils.EmailTemplateNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Brings existing USER rows up to date with columns added to the schema since they were written. Each step only
+ *  touches rows that still need it, so this is cheap to run on every startup.
+ *
+ * Tokens in the legacy TOKEN column were stored encrypted, so they can't be moved to USER_TOKEN, whose digests are
+ *  of the raw token. Users still waiting to verify their registration are sent a new verification token instead;
+ *  other legacy tokens (password resets) are simply cleared, and can be requested again.
+ */
+@Component
+public class UserDataBackfill implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(UserDataBackfill.class);
+
+    private UserRepository userRepository;
+    private TokenService tokenService;
+    private NotificationService notificationService;
+
+    @Autowired
+    public void setUserRepository(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Autowired
+    public void setTokenService(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Autowired
+    public void setNotificationService(NotificationService notificationService) {
+        this.notificationService = notificationService;
+    }
+
+    @Override
+    @Transactional
+    public void run( ApplicationArguments args) {
+        int updated = backfillUsernameLookup();
+        if ( updated > 0) {
+            log.info( "run(); populated USER_NAME_LOOKUP for {} users", updated);
+        }
+        updated = userRepository.backfillVersion();
+        if ( updated > 0) {
+            log.info( "run(); initialised VERSION for {} users", updated);
+        }
+        updated = userRepository.backfillUpdatedDate();
+        if ( updated > 0) {
+            log.info( "run(); stamped UPDATED_DATE for {} users", updated);
+        }
+        updated = reissueLegacyVerificationTokens();
+        if ( updated > 0) {
+            log.info( "run(); re-sent verification for {} users with a legacy TOKEN", updated);
+        }
+        updated = userRepository.clearLegacyTokens();
+        if ( updated > 0) {
+            log.info( "run(); cleared legacy TOKEN for {} users", updated);
+        }
+    }
+
+    /**
+     * Replaces the legacy verification token of each user still pending verification with a new one, and emails it
+     *  to them. Each user's legacy token is cleared first, and only the node that actually clears it sends the new
+     *  one, so users aren't emailed once per node when several start together.
+     * @return The number of users sent a new token.
+     */
+    private int reissueLegacyVerificationTokens() {
+        int result = 0;
+        for ( User user : userRepository.findPendingWithLegacyToken()) {
+            if ( userRepository.clearLegacyToken( user.getOid()) > 0) {
+                String token = tokenService.issueToken( user, UserToken.Purpose.VERIFICATION);
+                notificationService.queue( user.getEmailAddress(), "Innovation Portal - Registration Verification", token, EmailTemplateNames.USER_VERIFICATION_REQUESTED);
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * USER_NAME_LOOKUP is unique, so usernames that differ only in case or surrounding whitespace can't all be
+     *  backfilled: a single set-based update would fail, and with it startup. So such collisions are looked for
+     *  first, and reported. The colliding users are left without a lookup (and so can't sign in) until all but one
+     *  of them are renamed; everyone else is backfilled as normal.
+     * @return The number of rows updated.
+     */
+    private int backfillUsernameLookup() {
+        if ( userRepository.countMissingUsernameLookup() == 0) {
+            return 0;
+        }
+        List<String> collisions = userRepository.findCollidingUsernameLookups();
+        if ( collisions.isEmpty()) {
+            return userRepository.backfillUsernameLookup();
+        }
+        log.error( "backfillUsernameLookup(); {} usernames are shared, ignoring case and surrounding whitespace, by more than one user. " +
+                "These users can't sign in until all but one of each are renamed: {}", collisions.size(), userRepository.findUsernamesByNormalisedUsername( collisions));
+        return userRepository.backfillUsernameLookupExcept( collisions);
+    }
+}
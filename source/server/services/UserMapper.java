@@ -0,0 +1,114 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.UserRole;
+import com.fujitsu.digital.domain.dto.UserDTO;
+import com.fujitsu.digital.domain.dto.UserPermissionDTO;
+import org.mapstruct.IterableMapping;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.Mappings;
+import org.mapstruct.Named;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps between User and UserDTO. The implementation (UserMapperImpl) is generated at compile time by MapStruct as
+ *  plain getter/setter calls, so mapping involves no reflection, and list mappings are pre-sized.
+ */
+@Mapper(componentModel = "spring")
+public abstract class UserMapper {
+
+    private UserRoleLookup userRoleLookup;
+    private UserRoleAuthorityCache userRoleAuthorityCache;
+
+    @Autowired
+    public void setUserRoleLookup(UserRoleLookup userRoleLookup) {
+        this.userRoleLookup = userRoleLookup;
+    }
+
+    @Autowired
+    public void setUserRoleAuthorityCache(UserRoleAuthorityCache userRoleAuthorityCache) {
+        this.userRoleAuthorityCache = userRoleAuthorityCache;
+    }
+
+    /**
+     * Maps a user, including its role and permissions. The password is blanked and the token left out.
+     */
+    @Named("full")
+    @Mappings({
+            @Mapping(target = "password", constant = ""),
+            @Mapping(target = "newPassword", ignore = true),
+            @Mapping(target = "token", ignore = true),
+            @Mapping(target = "credentialsExpired", ignore = true),
+            @Mapping(target = "authorities", ignore = true),
+            @Mapping(target = "active", expression = "java( entity.isActive())"),
+            @Mapping(target = "roleId", source = "userRole.oid"),
+            @Mapping(target = "roleName", source = "userRole.name"),
+            @Mapping(target = "userPermissions", source = "userRole", qualifiedByName = "permissions")
+    })
+    public abstract UserDTO toDTO( User entity);
+
+    /**
+     * Maps just the user's own columns, for listings: the role (possibly a lazy proxy) is never touched. Built by the
+     *  same UserDTO constructor as the repository's summary projections, so a summary looks the same however it was
+     *  loaded.
+     */
+    @Named("summary")
+    public UserDTO toSummaryDTO( User entity) {
+        if ( entity == null) {
+            return null;
+        }
+        return new UserDTO( entity.getOid(), entity.getUsername(), entity.getFirstName(), entity.getLastName(),
+                entity.getEmailAddress(), entity.getStatus(), entity.isActive(), entity.getCreatedDate(), entity.getUpdatedDate());
+    }
+
+    /**
+     * Copies a DTO, including copies of its permissions, so that the copy can be handed out and changed freely.
+     */
+    @Mappings({
+            @Mapping(target = "authorities", ignore = true),
+            @Mapping(target = "userPermissions", qualifiedByName = "permissionCopies")
+    })
+    public abstract UserDTO copy( UserDTO dto);
+
+    @IterableMapping(qualifiedByName = "full")
+    public abstract List<UserDTO> toDTOs( List<User> entities);
+
+    @IterableMapping(qualifiedByName = "summary")
+    public abstract List<UserDTO> toSummaryDTOs( List<User> entities);
+
+    /**
+     * Maps a DTO back to a (detached) user, resolving its role by id. The password and token are left for the caller
+     *  to set.
+     */
+    @Mappings({
+            @Mapping(target = "password", ignore = true),
+            @Mapping(target = "token", ignore = true),
+            @Mapping(target = "authorities", ignore = true),
+            @Mapping(target = "active", expression = "java( dto.isActive() ? User.USER_ACTIVE : User.USER_INACTIVE)"),
+            @Mapping(target = "userRole", source = "roleId", qualifiedByName = "role")
+    })
+    public abstract User toEntity( UserDTO dto);
+
+    @Named("permissions")
+    protected List<UserPermissionDTO> permissions( UserRole role) {
+        return role == null ? new ArrayList<>() : userRoleAuthorityCache.get( role).getPermissionDTOs();
+    }
+
+    @Named("permissionCopies")
+    protected List<UserPermissionDTO> permissionCopies( List<UserPermissionDTO> permissions) {
+        List<UserPermissionDTO> result = new ArrayList<>( permissions == null ? 0 : permissions.size());
+        if ( permissions != null) {
+            permissions.forEach( permission -> result.add( new UserPermissionDTO( permission.getOid(), permission.getName())));
+        }
+        return result;
+    }
+
+    @Named("role")
+    protected UserRole role( Long roleId) {
+        return userRoleLookup.findEntity( roleId);
+    }
+}
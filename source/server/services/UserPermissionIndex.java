@@ -0,0 +1,96 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.dto.UserChangeDTO;
+import com.fujitsu.digital.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory reverse index from permission name to the oids of the users holding it, so that "who can approve
+ *  ideas?" doesn't cost a three-way join over the user table.
+ *
+ * The index is factored through roles, as permissions are: it holds each role's permission names, and each role's
+ *  user oids. It is built at startup and kept current by UserChangeFeedFollower. Until it has been built, lookups
+ *  report that they can't be answered, and callers fall back to the database.
+ */
+@Component
+public class UserPermissionIndex implements UserChangeFeedFollower.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(UserPermissionIndex.class);
+
+    private UserRepository userRepository;
+
+    // User oid -> role oid, and role oid -> user oids. Both only changed under the index's lock
+    private final ConcurrentMap<Long, Long> userRoles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<Long>> roleUsers = new ConcurrentHashMap<>();
+
+    // Normalised permission name -> oids of the roles holding it. Replaced wholesale on every refresh
+    private volatile Map<String, List<Long>> permissionRoles = Collections.emptyMap();
+
+    private volatile boolean loaded;
+
+    @Autowired
+    public void setUserRepository(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * @param permissionName A permission name, in any case.
+     * @return The oids of every user whose role holds the permission, or null if the index hasn't been built yet.
+     */
+    public List<Long> findUserOids( String permissionName) {
+        if ( !loaded) {
+            return null;
+        }
+        List<Long> result = new ArrayList<>();
+        for ( Long roleOid : permissionRoles.getOrDefault( normalise( permissionName), Collections.emptyList())) {
+            result.addAll( roleUsers.getOrDefault( roleOid, Collections.emptySet()));
+        }
+        return result;
+    }
+
+    @Override
+    public void onUserChanged( UserChangeDTO user) {
+        assign( user.getOid(), user.getRoleOid());
+    }
+
+    /**
+     * Re-reads the (few) role permissions after every pass over the feed, so that changes to roles are picked up too.
+     */
+    @Override
+    public void onRefreshed( boolean initial, int count) {
+        Map<String, List<Long>> permissionRoles = new HashMap<>();
+        for ( Object[] row : userRepository.findAllRolePermissionNames()) {
+            permissionRoles.computeIfAbsent( normalise( (String) row[1]), name -> new ArrayList<>()).add( (Long) row[0]);
+        }
+        this.permissionRoles = permissionRoles;
+
+        if ( initial) {
+            log.info( "onRefreshed(); indexed {} users across {} permissions", userRoles.size(), permissionRoles.size());
+        }
+        loaded = true;
+    }
+
+    private synchronized void assign( Long userOid, Long roleOid) {
+        Long previousRoleOid = roleOid != null ? userRoles.put( userOid, roleOid) : userRoles.remove( userOid);
+        if ( Objects.equals( previousRoleOid, roleOid)) {
+            return;
+        }
+        if ( previousRoleOid != null) {
+            roleUsers.getOrDefault( previousRoleOid, Collections.emptySet()).remove( userOid);
+        }
+        if ( roleOid != null) {
+            roleUsers.computeIfAbsent( roleOid, oid -> ConcurrentHashMap.newKeySet()).add( userOid);
+        }
+    }
+
+    private static String normalise( String permissionName) {
+        return permissionName.toUpperCase( Locale.ROOT);
+    }
+}
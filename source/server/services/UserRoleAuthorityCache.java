@@ -0,0 +1,125 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.config.CacheConfig;
+import com.fujitsu.digital.domain.UserRole;
+import com.fujitsu.digital.domain.dto.UserPermissionDTO;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches an immutable snapshot of each role's permissions, both as Spring Security authorities (for signin) and as
+ *  UserPermissionDTOs (for DTO mapping). Every signin with the same role shares the same (immutable) authorities,
+ *  and DTO mapping copies the snapshot's permissions, rather than walking the role's permission list, which may
+ *  not be loaded. UserPermissionDTOs are mutable, so each caller gets its own.
+ *
+ * Snapshots are keyed by role oid and versioned by the role's updated date, so a role that has been changed since
+ *  its snapshot was taken is re-read on next use. In addition, all snapshots are discarded whenever a role or
+ *  permission is saved or deleted through its service, along with the cached roles (UserRoleLookup) and cached
+ *  users (whose DTOs embed their role's name and permissions).
+ */
+@Aspect
+@Component
+public class UserRoleAuthorityCache {
+
+    private final ConcurrentMap<Long, RoleAuthorities> snapshots = new ConcurrentHashMap<>();
+    private CacheManager cacheManager;
+
+    @Autowired(required = false)
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * @param role A role whose permission list is loaded or loadable (i.e. managed, or initialised).
+     * @return The current snapshot of the role's authorities.
+     */
+    public RoleAuthorities get( UserRole role) {
+        RoleAuthorities result = snapshots.get( role.getOid());
+        if ( result == null || !Objects.equals( result.version, role.getUpdatedDate())) {
+            result = new RoleAuthorities( role);
+            snapshots.put( role.getOid(), result);
+        }
+        return result;
+    }
+
+    public void evict( Long roleOid) {
+        snapshots.remove( roleOid);
+    }
+
+    public void evictAll() {
+        snapshots.clear();
+        if ( cacheManager != null) {
+            for ( String cacheName : new String[] { CacheConfig.USER_ROLES, CacheConfig.USERS }) {
+                Cache cache = cacheManager.getCache( cacheName);
+                if ( cache != null) {
+                    cache.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards every snapshot when a role or permission is changed. We clear immediately, and again once the change
+     *  commits, so that a snapshot re-read from the old data in between doesn't survive.
+     */
+    @AfterReturning("execution(* com.fujitsu.digital.services.*RoleService*.save*(..)) || " +
+            "execution(* com.fujitsu.digital.services.*RoleService*.delete*(..)) || " +
+            "execution(* com.fujitsu.digital.services.*PermissionService*.save*(..)) || " +
+            "execution(* com.fujitsu.digital.services.*PermissionService*.delete*(..))")
+    public void onRoleChanged() {
+        evictAll();
+        if ( TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evictAll();
+                }
+            });
+        }
+    }
+
+    public static class RoleAuthorities {
+        private final LocalDateTime version;
+        private final List<UserServiceImpl.Permission> authorities;
+        private final List<UserPermissionDTO> permissionDTOs;
+
+        RoleAuthorities( UserRole role) {
+            this.version = role.getUpdatedDate();
+            List<UserServiceImpl.Permission> authorities = new ArrayList<>( role.getUserPermissionList().size());
+            List<UserPermissionDTO> permissionDTOs = new ArrayList<>( role.getUserPermissionList().size());
+            role.getUserPermissionList().forEach( permission -> {
+                authorities.add( new UserServiceImpl.PermissionImpl( permission.getName()));
+                permissionDTOs.add( new UserPermissionDTO( permission.getOid(), permission.getName()));
+            });
+            this.authorities = Collections.unmodifiableList( authorities);
+            this.permissionDTOs = Collections.unmodifiableList( permissionDTOs);
+        }
+
+        public List<UserServiceImpl.Permission> getAuthorities() {
+            return authorities;
+        }
+
+        /**
+         * @return A new, modifiable list of new UserPermissionDTOs.
+         */
+        public List<UserPermissionDTO> getPermissionDTOs() {
+            List<UserPermissionDTO> result = new ArrayList<>( permissionDTOs.size());
+            permissionDTOs.forEach( permission -> result.add( new UserPermissionDTO( permission.getOid(), permission.getName())));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.config.CacheConfig;
+import com.fujitsu.digital.domain.UserPermission;
+import com.fujitsu.digital.domain.UserRole;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Cached role lookups for the user service. Roles change perhaps once a month, but are resolved on every
+ *  registration, update and DTO-to-entity mapping.
+ *
+ * What is cached is an immutable snapshot of each role (RoleSnapshot: its oid, name and permission names), never the
+ *  role entity itself, so cached values can be shared between threads. Callers that need a role entity, e.g. as an
+ *  association value (User.setUserRole()), get a reference to it in their own persistence context. Snapshots are read
+ *  from the primary, since they are kept, and are all discarded whenever a role or permission is changed (see
+ *  UserRoleAuthorityCache.evictAll()).
+ */
+@Component
+public class UserRoleLookup {
+
+    private UserRoleService userRoleService;
+    private Cache cache;
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public void setUserRoleService(UserRoleService userRoleService) {
+        this.userRoleService = userRoleService;
+    }
+
+    @Autowired(required = false)
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cache = cacheManager.getCache( CacheConfig.USER_ROLES);
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        // Snapshots are read in their own (read-write, so primary) transaction, even when the caller's is read-only
+        this.transactionTemplate = new TransactionTemplate( transactionManager);
+        this.transactionTemplate.setPropagationBehavior( TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * @return A reference to the role, in the caller's persistence context, or null if there is no such role.
+     */
+    public UserRole findEntity( Long oid) {
+        return reference( find( oid));
+    }
+
+    /**
+     * @return A reference to the named role, in the caller's persistence context, or null if there is no such role.
+     */
+    public UserRole findByName( String name) {
+        return reference( snapshot( "name:" + name, () -> userRoleService.findByName( name)));
+    }
+
+    /**
+     * @return The snapshot of the role, or null if there is no such role.
+     */
+    public RoleSnapshot find( Long oid) {
+        return oid == null ? null : snapshot( "oid:" + oid, () -> userRoleService.findEntity( oid));
+    }
+
+    private RoleSnapshot snapshot( String key, Supplier<UserRole> loader) {
+        Cache.ValueWrapper cached = cache != null ? cache.get( key) : null;
+        if ( cached != null) {
+            return (RoleSnapshot) cached.get();
+        }
+        RoleSnapshot result = transactionTemplate != null
+                ? transactionTemplate.execute( status -> RoleSnapshot.of( loader.get()))
+                : RoleSnapshot.of( loader.get());
+        if ( result != null && cache != null) {
+            cache.put( key, result);
+        }
+        return result;
+    }
+
+    private UserRole reference( RoleSnapshot snapshot) {
+        if ( snapshot == null) {
+            return null;
+        }
+        return entityManager != null ? entityManager.getReference( UserRole.class, snapshot.getOid()) : userRoleService.findEntity( snapshot.getOid());
+    }
+
+    public static final class RoleSnapshot {
+        private final Long oid;
+        private final String name;
+        private final Map<Long, String> permissionNames;
+
+        private RoleSnapshot( Long oid, String name, Map<Long, String> permissionNames) {
+            this.oid = oid;
+            this.name = name;
+            this.permissionNames = permissionNames;
+        }
+
+        private static RoleSnapshot of( UserRole role) {
+            if ( role == null) {
+                return null;
+            }
+            Map<Long, String> permissionNames = new LinkedHashMap<>();
+            for ( UserPermission permission : role.getUserPermissionList()) {
+                permissionNames.put( permission.getOid(), permission.getName());
+            }
+            return new RoleSnapshot( role.getOid(), role.getName(), Collections.unmodifiableMap( permissionNames));
+        }
+
+        public Long getOid() {
+            return oid;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The role's permission names, by permission oid. Unmodifiable.
+         */
+        public Map<Long, String> getPermissionNames() {
+            return permissionNames;
+        }
+    }
+}
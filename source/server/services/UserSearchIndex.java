@@ -0,0 +1,207 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.dto.UserChangeDTO;
+import com.fujitsu.digital.domain.dto.UserDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory typeahead index over users' first name, last name, username and email address.
+ *
+ * Each user is indexed under the words of their names and of the local parts of their username and email address,
+ *  plus their whole username and email address, all lower case. The tokens are held in a sorted map, so each query
+ *  term is matched as a prefix of any token by a single range scan. A user matches a query if every term matches one
+ *  of their tokens, and matches are ranked: whole-token matches above prefix matches, then active users first, then
+ *  shorter names first.
+ *
+ * The index is built at startup and kept current by UserChangeFeedFollower.
+ */
+@Component
+public class UserSearchIndex implements UserChangeFeedFollower.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSearchIndex.class);
+
+    private static final int EXACT_MATCH = 2;
+    private static final int PREFIX_MATCH = 1;
+    // A shorter term's prefix range would take in a large share of the index, while hardly narrowing the matches
+    private static final int MIN_TERM_LENGTH = 2;
+
+    private static final Comparator<Match> RANKING = Comparator.<Match>comparingInt( match -> match.score)
+            .thenComparing( match -> match.entry.active)
+            .thenComparing( Comparator.<Match>comparingInt( match -> match.entry.fullName.length()).reversed())
+            .thenComparing( Comparator.<Match>comparingLong( match -> match.entry.oid).reversed());
+
+    private final ConcurrentMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Set<Long>> tokens = new ConcurrentSkipListMap<>();
+
+    private volatile boolean loaded;
+
+    /**
+     * @param query One or more whitespace separated terms, each matched (case insensitively) against the start of a
+     *  user's names, username or email address. Terms shorter than MIN_TERM_LENGTH are ignored.
+     * @param limit The maximum number of users to return.
+     * @return Summaries (oid, names, username, email address, active) of the best matching users, best first. Empty
+     *  until the index has been built, or if no term is long enough.
+     */
+    public List<UserDTO> search( String query, int limit) {
+        List<String> terms = new ArrayList<>();
+        for ( String term : query.trim().toLowerCase( Locale.ROOT).split( "\\s+")) {
+            if ( term.length() >= MIN_TERM_LENGTH) {
+                terms.add( term);
+            }
+        }
+        if ( !loaded || terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Score each user by their best match for every term, dropping those that miss any term
+        Map<Long, Integer> scores = null;
+        for ( String term : terms) {
+            Map<Long, Integer> termScores = new HashMap<>();
+            for ( Map.Entry<String, Set<Long>> token : prefixRange( term).entrySet()) {
+                int score = token.getKey().length() == term.length() ? EXACT_MATCH : PREFIX_MATCH;
+                for ( Long oid : token.getValue()) {
+                    if ( scores == null || scores.containsKey( oid)) {
+                        termScores.merge( oid, score, Math::max);
+                    }
+                }
+            }
+            if ( scores != null) {
+                Map<Long, Integer> previousScores = scores;
+                termScores.replaceAll( ( oid, score) -> score + previousScores.get( oid));
+            }
+            scores = termScores;
+            if ( scores.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        // Keep the top matches in a bounded heap, worst at its head
+        PriorityQueue<Match> top = new PriorityQueue<>( limit + 1, RANKING);
+        for ( Map.Entry<Long, Integer> score : scores.entrySet()) {
+            Entry entry = entries.get( score.getKey());
+            if ( entry != null) {
+                top.add( new Match( entry, score.getValue()));
+                if ( top.size() > limit) {
+                    top.poll();
+                }
+            }
+        }
+        List<UserDTO> result = new ArrayList<>( top.size());
+        while ( !top.isEmpty()) {
+            result.add( top.poll().entry.asSummaryDTO());
+        }
+        Collections.reverse( result);
+        return result;
+    }
+
+    @Override
+    public void onUserChanged( UserChangeDTO user) {
+        index( new Entry( user.getOid(), user.getUsername(), user.getFirstName(), user.getLastName(), user.getEmailAddress(), user.isActive()));
+    }
+
+    @Override
+    public void onRefreshed( boolean initial, int count) {
+        if ( initial) {
+            log.info( "onRefreshed(); indexed {} users", count);
+        }
+        loaded = true;
+    }
+
+    private synchronized void index( Entry entry) {
+        Entry previous = entries.put( entry.oid, entry);
+        Set<String> previousTokens = previous != null ? previous.tokens() : Collections.emptySet();
+        Set<String> entryTokens = entry.tokens();
+        for ( String token : previousTokens) {
+            if ( !entryTokens.contains( token)) {
+                tokens.computeIfPresent( token, ( key, oids) -> {
+                    oids.remove( entry.oid);
+                    return oids.isEmpty() ? null : oids;
+                });
+            }
+        }
+        for ( String token : entryTokens) {
+            if ( !previousTokens.contains( token)) {
+                tokens.computeIfAbsent( token, key -> ConcurrentHashMap.newKeySet()).add( entry.oid);
+            }
+        }
+    }
+
+    private ConcurrentNavigableMap<String, Set<Long>> prefixRange( String prefix) {
+        return tokens.subMap( prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static final class Entry {
+        private final long oid;
+        private final String username;
+        private final String firstName;
+        private final String lastName;
+        private final String fullName;
+        private final String emailAddress;
+        private final boolean active;
+
+        Entry( long oid, String username, String firstName, String lastName, String emailAddress, boolean active) {
+            this.oid = oid;
+            this.username = username;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.fullName = firstName + " " + lastName;
+            this.emailAddress = emailAddress;
+            this.active = active;
+        }
+
+        Set<String> tokens() {
+            Set<String> result = new HashSet<>();
+            addWords( result, firstName);
+            addWords( result, lastName);
+            addWords( result, localPart( username));
+            addWords( result, localPart( emailAddress));
+            if ( username != null) {
+                result.add( username.toLowerCase( Locale.ROOT));
+            }
+            if ( emailAddress != null) {
+                result.add( emailAddress.toLowerCase( Locale.ROOT));
+            }
+            return result;
+        }
+
+        UserDTO asSummaryDTO() {
+            return new UserDTO( oid, username, firstName, lastName, emailAddress, null, active, null, null);
+        }
+
+        private static String localPart( String address) {
+            if ( address == null) {
+                return null;
+            }
+            int at = address.indexOf( '@');
+            return at < 0 ? address : address.substring( 0, at);
+        }
+
+        private static void addWords( Set<String> result, String text) {
+            if ( text != null) {
+                for ( String word : text.toLowerCase( Locale.ROOT).split( "[^\\p{L}\\p{N}]+")) {
+                    if ( !word.isEmpty()) {
+                        result.add( word);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Match {
+        private final Entry entry;
+        private final int score;
+
+        Match( Entry entry, int score) {
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+}
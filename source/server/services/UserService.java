@@ -2,19 +2,37 @@ package com.fujitsu.digital.services;
 
 import com.fujitsu.digital.domain.User;
 import com.fujitsu.digital.domain.UserRole;
+import com.fujitsu.digital.domain.dto.UserBulkResultDTO;
+import com.fujitsu.digital.domain.dto.UserBulkUpdateDTO;
 import com.fujitsu.digital.domain.dto.UserDTO;
+import com.fujitsu.digital.domain.dto.UserDeltaDTO;
+import com.fujitsu.digital.domain.dto.UserPageDTO;
+import com.fujitsu.digital.domain.dto.UserPatchDTO;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface UserService extends BaseService<User, UserDTO, Long> {
 
     UserDTO getById(Long id);
+    UserDTO getById(Long id, Long version);
     UserDTO asSummaryDTO(User user);
     List<UserDTO> getAll();
+    UserPageDTO getPage(Long lastSeenOid, int size);
+    UserPageDTO getSummaryPage(Long lastSeenOid, int size);
+    List<UserDTO> search(String query, int limit);
+    boolean isUsernameAvailable(String username);
+    boolean isEmailAddressAvailable(String emailAddress);
+    Stream<UserDTO> streamAll(int batchSize);
+    UserDeltaDTO getChanges(String cursor, int size);
     List<User> findByUserRole(UserRole userRole);
+    List<User> findAllWithPermission(String permissionName);
+    List<Long> findUserOidsWithPermission(String permissionName);
 
     UserDTO getCurrentUser();
+    boolean isCurrentUserActive();
+    Long getVersion(Long id);
     UserDTO updateCurrentUser(UserDTO userDTO);
 
     Boolean startResetUser(UserDTO userDTO);
@@ -24,7 +42,10 @@ public interface UserService extends BaseService<User, UserDTO, Long> {
     Boolean signout();
 
     UserDTO createUser(UserDTO userDTO);
+    List<UserBulkResultDTO> createUsers(List<UserDTO> userDTOs);
     Boolean verifyUser(UserDTO userDTO);
 
     UserDTO updateUser(Long id, UserDTO userDTO);
+    UserDTO patchUser(Long id, UserPatchDTO patchDTO);
+    Integer updateUsers(UserBulkUpdateDTO bulkUpdateDTO);
 }
@@ -1,29 +1,60 @@
 package com.fujitsu.digital.services;
 
+import com.fujitsu.digital.config.CacheConfig;
 import com.fujitsu.digital.domain.User;
 import com.fujitsu.digital.domain.UserRole;
+import com.fujitsu.digital.domain.UserToken;
+import com.fujitsu.digital.domain.dto.UserBulkResultDTO;
+import com.fujitsu.digital.domain.dto.UserBulkUpdateDTO;
+import com.fujitsu.digital.domain.dto.UserChangeDTO;
 import com.fujitsu.digital.domain.dto.UserDTO;
-import com.fujitsu.digital.domain.dto.UserPermissionDTO;
+import com.fujitsu.digital.domain.dto.UserDeltaDTO;
+import com.fujitsu.digital.domain.dto.UserPageDTO;
+import com.fujitsu.digital.domain.dto.UserPatchDTO;
 import com.fujitsu.digital.repositories.UserRepository;
+import com.fujitsu.digital.security.PasswordHasher;
+import com.fujitsu.digital.security.SessionTokenService;
 import com.fujitsu.digital.security.UserProvider;
 import com.fujitsu.digital.utils.ConfigCache;
-import com.fujitsu.digital.utils.EmailSender;
+import com.fujitsu.digital.utils.ReadYourWrites;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.fujitsu.digital.utils.EmailTemplateNames;
 
@@ -33,11 +64,40 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
 
     private static final Logger log = LoggerFactory.getLogger(UserServiceImpl.class);
 
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int BULK_CHUNK_SIZE = 500;
+    private static final int MAX_SEARCH_LIMIT = 50;
+    private static final String CURSOR_SEPARATOR = "|";
+
     private UserProvider userProvider;
-    private UserRoleService userRoleService;
+    private PasswordHasher passwordHasher;
+    private UserRoleLookup userRoleLookup;
     private UserRepository userRepository;
-    private EmailSender emailSender;
+    private NotificationService notificationService;
+    private AdminNotificationDigest adminNotificationDigest;
+    private TokenService tokenService;
+    private SessionTokenService sessionTokenService;
     private ConfigCache configCache;
+    private RegistrationEmailMatcher registrationEmailMatcher;
+    private UserRoleAuthorityCache userRoleAuthorityCache;
+    private UserMapper userMapper;
+    private ReadYourWrites readYourWrites;
+    private UserPermissionIndex userPermissionIndex;
+    private UserSearchIndex userSearchIndex;
+    private UserAvailabilityFilter userAvailabilityFilter;
+    private ApplicationEventPublisher applicationEventPublisher;
+    private Cache usersCache;
+    private TransactionTemplate pageTransactionTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${ip.users.changes.settle-seconds:5}")
+    private long changesSettleSeconds;
+
+    @Value("${ip.session.stateless:false}")
+    private boolean statelessSessions;
 
     @Autowired
     public void setUserProvider(UserProvider userProvider) {
@@ -45,13 +105,28 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
     }
 
     @Autowired
-    public void setUserRoleService(UserRoleService userRoleService) {
-        this.userRoleService = userRoleService;
+    public void setPasswordHasher(PasswordHasher passwordHasher) {
+        this.passwordHasher = passwordHasher;
+    }
+
+    @Autowired
+    public void setNotificationService(NotificationService notificationService) {
+        this.notificationService = notificationService;
+    }
+
+    @Autowired
+    public void setAdminNotificationDigest(AdminNotificationDigest adminNotificationDigest) {
+        this.adminNotificationDigest = adminNotificationDigest;
     }
 
     @Autowired
-    public void setEmailSender(EmailSender emailSender) {
-        this.emailSender = emailSender;
+    public void setTokenService(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Autowired
+    public void setSessionTokenService(SessionTokenService sessionTokenService) {
+        this.sessionTokenService = sessionTokenService;
     }
 
     @Autowired
@@ -59,29 +134,313 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
         this.configCache = configCache;
     }
 
+    @Autowired
+    public void setRegistrationEmailMatcher(RegistrationEmailMatcher registrationEmailMatcher) {
+        this.registrationEmailMatcher = registrationEmailMatcher;
+    }
+
+    @Autowired
+    public void setUserRoleAuthorityCache(UserRoleAuthorityCache userRoleAuthorityCache) {
+        this.userRoleAuthorityCache = userRoleAuthorityCache;
+    }
+
+    @Autowired
+    public void setUserRoleLookup(UserRoleLookup userRoleLookup) {
+        this.userRoleLookup = userRoleLookup;
+    }
+
+    @Autowired
+    public void setCacheManager(CacheManager cacheManager) {
+        this.usersCache = cacheManager.getCache( CacheConfig.USERS);
+    }
+
+    @Autowired
+    public void setReadYourWrites(ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Autowired
+    public void setUserPermissionIndex(UserPermissionIndex userPermissionIndex) {
+        this.userPermissionIndex = userPermissionIndex;
+    }
+
+    @Autowired
+    public void setUserSearchIndex(UserSearchIndex userSearchIndex) {
+        this.userSearchIndex = userSearchIndex;
+    }
+
+    @Autowired
+    public void setUserAvailabilityFilter(UserAvailabilityFilter userAvailabilityFilter) {
+        this.userAvailabilityFilter = userAvailabilityFilter;
+    }
+
+    @Autowired
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    @Autowired
+    public void setUserMapper(UserMapper userMapper) {
+        this.userMapper = userMapper;
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        // Each streamed page is read in its own short, read-only transaction (and persistence context)
+        this.pageTransactionTemplate = new TransactionTemplate( transactionManager);
+        this.pageTransactionTemplate.setPropagationBehavior( TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.pageTransactionTemplate.setReadOnly( true);
+
+        // Methods that hash passwords do so before starting their transaction, and so hold no connection while they
+        // wait on the hashing pool, then do their database work in a transaction of their own
+        this.transactionTemplate = new TransactionTemplate( transactionManager);
+    }
+
     @Autowired
     public void setUserRepository(UserRepository userRepository) {
         this.userRepository = userRepository;
         super.setBaseRepository( userRepository);
     }
 
+    /**
+     * Served from the users cache where possible. Cached entries are evicted whenever the user is saved (on another
+     *  node, once the change feed shows it: see CachedUserEvictor), and all of them whenever a role or permission
+     *  changes. The cached DTO is shared, so every caller gets its own copy.
+     *  Not read-only, so that a cache miss reads the primary: a lagging replica's row would otherwise be cached.
+     */
     @Override
+    @Transactional
     public UserDTO getById( Long id) {
-        return findAsDTO( id);
+        Cache.ValueWrapper cached = usersCache != null ? usersCache.get( id) : null;
+        UserDTO result = cached != null ? (UserDTO) cached.get() : null;
+        if ( result == null) {
+            result = findAsDTO( id);
+            if ( result != null && usersCache != null) {
+                usersCache.put( id, result);
+            }
+        }
+        return result != null ? userMapper.copy( result) : null;
+    }
+
+    /**
+     * As getById(), but for a user known to be at (at least) the given version, e.g. just read from the primary. A
+     *  cached copy of an older version, cached before a change made on another node reached this one, is evicted
+     *  and the user re-read.
+     */
+    @Override
+    @Transactional
+    public UserDTO getById( Long id, Long version) {
+        UserDTO result = getById( id);
+        if ( result != null && version != null && !version.equals( result.getVersion()) && usersCache != null) {
+            usersCache.evict( id);
+            result = getById( id);
+        }
+        return result;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<UserDTO> getAll() {
-        return findAllAsDTOs( sortById());
+        return userMapper.toDTOs( userRepository.findAllFetchRole());
+    }
+
+    /**
+     * Retrieves one page of users, newest first, using keyset pagination. Unlike offset pagination, the cost of
+     *  fetching a page doesn't grow with the number of pages already read.
+     * @param lastSeenOid The oid of the last user on the previous page (i.e. the previous page's nextCursor), or null
+     *  for the first page.
+     * @param size The maximum number of users to return (capped at MAX_PAGE_SIZE).
+     * @return A page of fully populated UserDTOs, plus the cursor for the next page.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public UserPageDTO getPage( Long lastSeenOid, int size) {
+        int pageSize = Math.max( 1, Math.min( size, MAX_PAGE_SIZE));
+        List<UserDTO> users = findPage( lastSeenOid, pageSize);
+        Long nextCursor = users.size() < pageSize ? null : users.get( users.size() - 1).getOid();
+        return new UserPageDTO( users, nextCursor);
+    }
+
+    /**
+     * Streams every user, newest first, as fully populated UserDTOs. Users are read lazily, one keyset page at a time,
+     *  each page in its own read-only transaction whose persistence context is cleared once the page is mapped. This
+     *  keeps memory flat however many users there are, and means the stream can be consumed outside of any
+     *  transaction (e.g. while writing a response).
+     * @param batchSize The number of users to read per page.
+     * @return A lazily populated, sequential stream of UserDTOs.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Stream<UserDTO> streamAll( int batchSize) {
+        int pageSize = Math.max( 1, Math.min( batchSize, MAX_PAGE_SIZE));
+        return StreamSupport.stream( new UserPageSpliterator( pageSize), false);
+    }
+
+    /**
+     * Retrieves one page of user summaries (no role or permissions), newest first, using keyset pagination. Summaries
+     *  are projected straight from the query into DTOs, so no User entities are loaded.
+     * @param lastSeenOid The oid of the last user on the previous page (i.e. the previous page's nextCursor), or null
+     *  for the first page.
+     * @param size The maximum number of users to return (capped at MAX_PAGE_SIZE).
+     * @return A page of summary UserDTOs, plus the cursor for the next page.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public UserPageDTO getSummaryPage( Long lastSeenOid, int size) {
+        int pageSize = Math.max( 1, Math.min( size, MAX_PAGE_SIZE));
+        List<UserDTO> users = lastSeenOid == null
+                ? userRepository.findSummaryFirstPage( PageRequest.of( 0, pageSize))
+                : userRepository.findSummaryPageAfter( lastSeenOid, PageRequest.of( 0, pageSize));
+        Long nextCursor = users.size() < pageSize ? null : users.get( users.size() - 1).getOid();
+        return new UserPageDTO( users, nextCursor);
+    }
+
+    /**
+     * Finds users by partial name, username or email address, e.g. for typeahead. Answered entirely from
+     *  UserSearchIndex, without touching the database.
+     * @param query One or more terms, each matched against the start of a user's names, username or email address.
+     * @param limit The maximum number of users to return (capped at MAX_SEARCH_LIMIT).
+     * @return Summaries of the best matching users, best first.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<UserDTO> search( String query, int limit) {
+        return userSearchIndex.search( query, Math.min( limit, MAX_SEARCH_LIMIT));
     }
 
+    /**
+     * @param username A username as entered by a user.
+     * @return true if no user is registered with the username. Usually answered from UserAvailabilityFilter alone;
+     *  only a possibly-taken username costs an (indexed) query.
+     */
     @Override
+    @Transactional(readOnly = true)
+    public boolean isUsernameAvailable( String username) {
+        return username == null
+                || !userAvailabilityFilter.mightBeTakenUsername( username)
+                || userRepository.findExistingUsernameLookups( Collections.singletonList( User.normaliseUsername( username))).isEmpty();
+    }
+
+    /**
+     * @param emailAddress An email address as entered by a user.
+     * @return true if no user is registered with the email address. Usually answered from UserAvailabilityFilter
+     *  alone; only a possibly-taken address costs an (indexed) query.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public boolean isEmailAddressAvailable( String emailAddress) {
+        return emailAddress == null
+                || !userAvailabilityFilter.mightBeTakenEmailAddress( emailAddress)
+                || userRepository.findExistingEmailAddresses( Collections.singletonList( emailAddress.trim())).isEmpty();
+    }
+
+    private List<UserDTO> findPage( Long lastSeenOid, int pageSize) {
+        List<User> users = lastSeenOid == null
+                ? userRepository.findFirstPage( PageRequest.of( 0, pageSize))
+                : userRepository.findPageAfter( lastSeenOid, PageRequest.of( 0, pageSize));
+        return userMapper.toDTOs( users);
+    }
+
+    /**
+     * Retrieves the users created, updated or disabled since a previous call, for downstream systems that need to keep
+     *  a copy of the user list in step. Changes are returned oldest first, and the returned cursor resumes exactly
+     *  after the last change returned. Updated dates are stamped as each transaction commits (see stampAtCommit()), and
+     *  changes from the last few seconds are held back until the next call, so that a commit still in progress can't
+     *  be skipped over.
+     * @param cursor The cursor returned by the previous call, or null to start from the beginning.
+     * @param size The maximum number of users to return (capped at MAX_PAGE_SIZE).
+     * @return Summaries of the changed users, and the cursor to resume from.
+     *
+     * @throws InvalidParameterException if the cursor is malformed.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public UserDeltaDTO getChanges( String cursor, int size) throws InvalidParameterException {
+        int pageSize = Math.max( 1, Math.min( size, MAX_PAGE_SIZE));
+        LocalDateTime until = LocalDateTime.now().minusSeconds( changesSettleSeconds);
+        // Read from the primary: the settle window covers commits in progress, not replication lag, so a replica
+        // could still be missing changes from before it, which the cursor would then skip for good
+        List<UserDTO> users;
+        if ( cursor == null || cursor.isEmpty()) {
+            users = readYourWrites.onPrimary( () -> userRepository.findChangedFirst( until, PageRequest.of( 0, pageSize)));
+        }
+        else {
+            String[] position = decodeCursor( cursor);
+            users = readYourWrites.onPrimary( () -> userRepository.findChangedSince( LocalDateTime.parse( position[0]), Long.valueOf( position[1]), until, PageRequest.of( 0, pageSize)));
+        }
+
+        String nextCursor = cursor;
+        if ( !users.isEmpty()) {
+            UserDTO last = users.get( users.size() - 1);
+            nextCursor = encodeCursor( last.getUpdatedDate().toString(), last.getOid());
+        }
+        return new UserDeltaDTO( users, nextCursor, users.size() == pageSize);
+    }
+
+    private String encodeCursor( String updatedDate, Long oid) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString( ( updatedDate + CURSOR_SEPARATOR + oid).getBytes( StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor( String cursor) throws InvalidParameterException {
+        String[] result;
+        try {
+            result = new String( Base64.getUrlDecoder().decode( cursor), StandardCharsets.UTF_8).split( Pattern.quote( CURSOR_SEPARATOR));
+            if ( result.length == 2) {
+                LocalDateTime.parse( result[0]);
+                Long.valueOf( result[1]);
+                return result;
+            }
+        }
+        catch ( IllegalArgumentException | DateTimeParseException e) {
+            // Fall through to report the bad cursor
+        }
+        throw new InvalidParameterException( "Bad cursor: " + cursor);
+    }
+
+    /**
+     * Finds every user whose role holds the given permission, e.g. to route an idea to its approvers. The users are
+     *  found in UserPermissionIndex and loaded by primary key; only if the index isn't built yet is the permission
+     *  join run instead.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<User> findAllWithPermission( String permissionName) {
+        List<Long> oids = userPermissionIndex.findUserOids( permissionName);
+        if ( oids == null) {
+            return userRepository.findAllWithPermission( permissionName);
+        }
+        List<User> result = new ArrayList<>( oids.size());
+        for ( List<Long> chunk : chunks( oids, BULK_CHUNK_SIZE)) {
+            result.addAll( userRepository.findAllByOidFetchRole( chunk));
+        }
+        return result;
+    }
+
+    /**
+     * As findAllWithPermission(), but just the users' oids, answered from memory wherever possible.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Long> findUserOidsWithPermission( String permissionName) {
+        List<Long> result = userPermissionIndex.findUserOids( permissionName);
+        if ( result == null) {
+            result = new ArrayList<>();
+            for ( User user : userRepository.findAllWithPermission( permissionName)) {
+                result.add( user.getOid());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public List<User> findByUserRole( UserRole userRole) {
         List<User> result = userRepository.findByUserRole( userRole);
         return result;
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserDTO getCurrentUser() {
         UserDTO result = userProvider.getAuthenticatedUser();
         if ( result == null) {
@@ -100,28 +459,235 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
         return result;
     }
 
+    /**
+     * A cheap check of the current user's status, for the client's frequent health polling. Needs no transaction,
+     *  and (unlike getCurrentUser()) allocates nothing for anonymous callers.
+     * @return true if there is an authenticated, active user.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean isCurrentUserActive() {
+        UserDTO user = userProvider.getAuthenticatedUser();
+        return user != null && Boolean.TRUE.equals( user.getActive());
+    }
+
+    /**
+     * A single-column primary key lookup, for conditional requests. Deliberately not read-only, so it is answered by
+     *  the primary: a replica could report a version the user has already moved past.
+     * @return The user's current version, or null if there is no such user.
+     */
+    @Override
+    public Long getVersion( Long id) {
+        return userRepository.findVersionById( id);
+    }
+
     /**
      * Starts a registration request sequence by creating a new user account and (conditionally, depending on email
      *  address), sending out a self-verification email.
      * @param userDTO A UserDTO fully populated with the user's registration details.
      * @return A fully populated UserDTO.
      *
-     * @throws DuplicateKeyException if the username already exists.
+     * @throws DuplicateKeyException if the username or email address is already registered.
      * @throws InvalidParameterException if any of the supplied input parameters are invalid (including auto-assigned
      *  Role and Access Level).
      */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserDTO createUser( UserDTO userDTO) throws DuplicateKeyException, InvalidParameterException {
-        User result = null;
+        // Turn away a taken username or email address before doing any (expensive) password hashing. Names the
+        // availability filter knows to be new skip the check altogether
+        if ( !isUsernameAvailable( userDTO.getUsername())) {
+            throw new DuplicateKeyException( "Duplicate Username: " + userDTO.getUsername());
+        }
+        if ( !isEmailAddressAvailable( userDTO.getEmailAddress())) {
+            throw new DuplicateKeyException( "Duplicate Email Address: " + userDTO.getEmailAddress());
+        }
+        String encryptedPassword = passwordHasher.hash( userDTO.getPassword());
+
+        return transactionTemplate.execute( status -> {
+            // Populate the new User entity from user-supplied attributes
+            boolean selfVerification = isSelfVerification( userDTO);
+            User user = newUser( userDTO, encryptedPassword, selfVerification, new HashMap<>());
+
+            // Finally, save the new user details. If this fails due to a duplicate username or email address (taken
+            // concurrently), then throw our duplicate key exception to notify the user
+            User result = null;
+            try {
+                result = persist( user);
+                notifyRegistered( result, selfVerification ? tokenService.issueToken( result, UserToken.Purpose.VERIFICATION) : null);
+            }
+            catch ( DataIntegrityViolationException e) {
+                throw new DuplicateKeyException( "Duplicate Username or Email Address: " + userDTO.getUsername());
+            }
+            return asDTO( result);
+        });
+    }
+
+    /**
+     * Registers a batch of new users, e.g. a whole department being onboarded. Equivalent to calling createUser() for
+     *  each user, except that: roles are resolved once per batch; passwords are hashed in parallel; duplicate
+     *  usernames and email addresses (whether already registered or repeated within the batch) are detected up front
+     *  with a couple of set-based queries and reported per row, rather than aborting the batch; the new users are
+     *  inserted with JDBC batching; and their verification tokens and notifications are written together, after the
+     *  users. Should a duplicate be registered concurrently, after the up front checks, the rows are saved one at a
+     *  time instead, so that only the clashing rows are reported as duplicates.
+     * @param userDTOs UserDTOs fully populated with each user's registration details.
+     * @return One result per supplied UserDTO, in the same order.
+     *
+     * @throws InvalidParameterException if the auto-assigned Role or Access Level is badly configured.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<UserBulkResultDTO> createUsers( List<UserDTO> userDTOs) throws InvalidParameterException {
+        List<UserBulkResultDTO> results = new ArrayList<>( userDTOs.size());
+        for ( int i = 0; i < userDTOs.size(); i++) {
+            results.add( new UserBulkResultDTO( i, userDTOs.get( i).getUsername()));
+        }
+
+        // Reject rows that are incomplete, or that clash with an existing user or an earlier row in the batch
+        Set<String> usernames = new HashSet<>();
+        Set<String> emailAddresses = new HashSet<>();
+        for ( UserDTO userDTO : userDTOs) {
+            // Only names that might already be registered need checking against the database
+            if ( userDTO.getUsername() != null && userAvailabilityFilter.mightBeTakenUsername( userDTO.getUsername())) {
+                usernames.add( User.normaliseUsername( userDTO.getUsername()));
+            }
+            if ( userDTO.getEmailAddress() != null && userAvailabilityFilter.mightBeTakenEmailAddress( userDTO.getEmailAddress())) {
+                emailAddresses.add( userDTO.getEmailAddress().trim());
+            }
+        }
+        Set<String> takenUsernames = new HashSet<>();
+        Set<String> takenEmailAddresses = new HashSet<>();
+        for ( List<String> chunk : chunks( new ArrayList<>( usernames), BULK_CHUNK_SIZE)) {
+            takenUsernames.addAll( userRepository.findExistingUsernameLookups( chunk));
+        }
+        for ( List<String> chunk : chunks( new ArrayList<>( emailAddresses), BULK_CHUNK_SIZE)) {
+            userRepository.findExistingEmailAddresses( chunk).forEach( emailAddress -> takenEmailAddresses.add( emailAddress.toLowerCase()));
+        }
+
+        List<Integer> accepted = new ArrayList<>( userDTOs.size());
+        for ( int i = 0; i < userDTOs.size(); i++) {
+            UserDTO userDTO = userDTOs.get( i);
+            if ( userDTO.getUsername() == null || userDTO.getEmailAddress() == null || userDTO.getPassword() == null) {
+                results.get( i).setOutcome( UserBulkResultDTO.Outcome.INVALID);
+            }
+            else if ( takenUsernames.contains( User.normaliseUsername( userDTO.getUsername()))
+                    || takenEmailAddresses.contains( userDTO.getEmailAddress().trim().toLowerCase())) {
+                results.get( i).setOutcome( UserBulkResultDTO.Outcome.DUPLICATE);
+            }
+            else {
+                takenUsernames.add( User.normaliseUsername( userDTO.getUsername()));
+                takenEmailAddresses.add( userDTO.getEmailAddress().trim().toLowerCase());
+                accepted.add( i);
+            }
+        }
+
+        // Hash every accepted password in parallel, then build the new users. Roles are looked up once per batch
+        List<String> passwords = new ArrayList<>( accepted.size());
+        for ( Integer i : accepted) {
+            passwords.add( userDTOs.get( i).getPassword());
+        }
+        List<String> encryptedPasswords = passwordHasher.hashAll( passwords);
+        try {
+            transactionTemplate.execute( status -> {
+                saveNewUsers( userDTOs, accepted, encryptedPasswords, results);
+                return null;
+            });
+        }
+        catch ( DataIntegrityViolationException e) {
+            // A username or email address was registered concurrently, after the up front checks, and the batch was
+            // rolled back. Save the rows one at a time instead, so that only the clashing rows are turned away
+            log.info( "createUsers(); concurrent duplicate, saving {} users one at a time", accepted.size());
+            for ( int j = 0; j < accepted.size(); j++) {
+                List<Integer> row = Collections.singletonList( accepted.get( j));
+                List<String> encryptedPassword = Collections.singletonList( encryptedPasswords.get( j));
+                try {
+                    transactionTemplate.execute( status -> {
+                        saveNewUsers( userDTOs, row, encryptedPassword, results);
+                        return null;
+                    });
+                }
+                catch ( DataIntegrityViolationException rowException) {
+                    results.get( accepted.get( j)).setOutcome( UserBulkResultDTO.Outcome.DUPLICATE);
+                    results.get( accepted.get( j)).setUser( null);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Builds and inserts the accepted rows of a createUsers() batch, recording each one's outcome.
+     */
+    private void saveNewUsers( List<UserDTO> userDTOs, List<Integer> accepted, List<String> encryptedPasswords, List<UserBulkResultDTO> results) {
+        LocalDateTime createdSince = LocalDateTime.now();
+        Map<String, UserRole> userRoles = new HashMap<>();
+        List<User> users = new ArrayList<>( accepted.size());
+        boolean[] selfVerification = new boolean[accepted.size()];
+        for ( int j = 0; j < accepted.size(); j++) {
+            UserDTO userDTO = userDTOs.get( accepted.get( j));
+            selfVerification[j] = isSelfVerification( userDTO);
+            users.add( newUser( userDTO, encryptedPasswords.get( j), selfVerification[j], userRoles));
+        }
+
+        // Insert the new users in JDBC batches, then queue all of their notifications
+        Session session = entityManager.unwrap( Session.class);
+        Integer jdbcBatchSize = session.getJdbcBatchSize();
+        try {
+            session.setJdbcBatchSize( BULK_CHUNK_SIZE);
+            List<User> saved = userRepository.saveAll( users);
+            stampAtCommit( saved.stream().map( User::getOid).collect( Collectors.toList()), createdSince);
+            readYourWrites.markWrite();
+            saved.forEach( user -> applicationEventPublisher.publishEvent( new UserChangeDTO( user)));
+            userRepository.flush();
 
-        // Populate the new User entity form user-supplied attributes
+            // Issue the verification tokens together, as a per-user token DELETE would flush the session every time.
+            // Then queue the notifications
+            List<User> selfVerifying = new ArrayList<>();
+            for ( int j = 0; j < saved.size(); j++) {
+                if ( selfVerification[j]) {
+                    selfVerifying.add( saved.get( j));
+                }
+            }
+            Iterator<String> tokens = tokenService.issueTokens( selfVerifying, UserToken.Purpose.VERIFICATION).iterator();
+            for ( int j = 0; j < saved.size(); j++) {
+                notifyRegistered( saved.get( j), selfVerification[j] ? tokens.next() : null);
+                UserBulkResultDTO result = results.get( accepted.get( j));
+                result.setOutcome( UserBulkResultDTO.Outcome.CREATED);
+                result.setUser( asSummaryDTO( saved.get( j)));
+            }
+        }
+        catch ( DataIntegrityViolationException e) {
+            throw new DuplicateKeyException( "Duplicate Username registered concurrently");
+        }
+        finally {
+            session.setJdbcBatchSize( jdbcBatchSize);
+        }
+    }
+
+    /**
+     * @return true if a registration is a candidate for self-verification: auto-approve is enabled and the submitted
+     *  email address meets the match criteria.
+     */
+    private boolean isSelfVerification( UserDTO userDTO) {
+        return configCache.regApproveOn() && userEmailMatches( userDTO.getEmailAddress());
+    }
+
+    /**
+     * Populates a new (unsaved) User entity from a registration request.
+     * @param userRoles Roles already resolved by name, shared across calls to save repeated lookups.
+     *
+     * @throws InvalidParameterException if the auto-assigned Role or Access Level is badly configured.
+     */
+    private User newUser( UserDTO userDTO, String encryptedPassword, boolean selfVerification, Map<String, UserRole> userRoles) throws InvalidParameterException {
         User user = new User();
         user.setUsername( userDTO.getUsername());
-        user.setPassword( userProvider.encryptPassword( userDTO.getPassword()));
+        user.setPassword( encryptedPassword);
         user.setFirstName( userDTO.getFirstName());
         user.setLastName( userDTO.getLastName());
         user.setEmailAddress( userDTO.getEmailAddress());
         user.setCreatedDate( LocalDateTime.now());
+        user.setUpdatedDate( user.getCreatedDate());
 
         // If auto-approve is enabled and the submitted email address meets the match criteria, we'll create their
         // account in an disabled state but send them a self-verification email containing a one-time usage token.
@@ -131,19 +697,13 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
         // administrator reviews the registration request and manually activates the account.
         String roleName = null;
         String accessLevelName = null;
-        String token = null;
-        if ( configCache.regApproveOn() && userEmailMatches( userDTO.getEmailAddress())) {
-            user.setStatus( User.Status.PENDING);
-            user.setActive( User.USER_INACTIVE);
+        user.setStatus( User.Status.PENDING);
+        user.setActive( User.USER_INACTIVE);
+        if ( selfVerification) {
             accessLevelName = configCache.regInitialAccessLevel();
             roleName = configCache.regInitialRole();
-            // Generate and store the self-verification token alongside the new user's details
-            token = UUID.randomUUID().toString();
-            user.setToken( userProvider.encryptPassword( token));
         }
         else {
-            user.setStatus( User.Status.PENDING);
-            user.setActive( User.USER_INACTIVE);
             accessLevelName = User.DEFAULT_ACCESS_LEVEL_NAME;
             roleName = UserRole.DEFAULT_ROLE_NAME;
         }
@@ -159,37 +719,39 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
 
         // Protect this method against a badly configured Role name. I this can't be resolved, then throw our bad
         // parameter exception, so, once again, it doesn't go undetected
-        UserRole userRole = userRoleService.findByName( roleName);
+        UserRole userRole = userRoles.computeIfAbsent( roleName, userRoleLookup::findByName);
         if ( userRole == null) {
             throw new InvalidParameterException( "Bad Role name: " + roleName);
         }
         user.setUserRole( userRole);
+        return user;
+    }
 
-        // Finally, save the new user details. If this fails due to a duplicate username, then throw our duplicate
-        // key exception to notify the user
-        try {
-            result = save( user);
-
-            // Email notifications depend on whether the registration is a candidate for self-verification or not
-            if ( token != null) {
-                // Tell the user that their registration request was received but now needs self-verification
-                emailSender.sendHTMLMessage( user.getEmailAddress(), "Innovation Portal - Registration Verification", token, EmailTemplateNames.USER_VERIFICATION_REQUESTED);
+    /**
+     * Queues the emails for a newly saved registration.
+     * @param verificationToken The user's self-verification token, or null if the registration is instead to be
+     *  reviewed by an administrator.
+     */
+    private void notifyRegistered( User user, String verificationToken) {
+        String userDescription = user.getFirstName() + " " + user.getLastName() + " (" + user.getEmailAddress() + ")";
 
-                // Tell the system administrator(s) that a new user self-verification is now in progress
-                emailSender.sendHTMLMessage( configCache.emailAdminArray(), "Innovation Portal - New User Verification Requested", userDTO.getFirstName() + " " + userDTO.getLastName() + " (" + userDTO.getEmailAddress() + ")", EmailTemplateNames.ADMIN_USER_VERIFICATION_REQUESTED);
-            }
-            else {
-                // Tell the user that their registration request was received but is now awaiting review
-                emailSender.sendHTMLMessage( userDTO.getEmailAddress(), "Innovation Portal - Registration Received", EmailTemplateNames.USER_REGISTERED);
+        // Email notifications depend on whether the registration is a candidate for self-verification or not
+        if ( verificationToken != null) {
+            // Tell the user that their registration request was received but now needs self-verification
+            notificationService.queue( user.getEmailAddress(), "Innovation Portal - Registration Verification", verificationToken, EmailTemplateNames.USER_VERIFICATION_REQUESTED);
 
-                // Tell the system administrator(s) that a new user registration request is now pending
-                emailSender.sendHTMLMessage( configCache.emailAdminArray(), "Innovation Portal - New User Registration", userDTO.getFirstName() + " " + userDTO.getLastName() + " (" + userDTO.getEmailAddress() + ")", EmailTemplateNames.ADMIN_USER_REGISTERED);
-            }
+            // Tell the system administrator(s) that a new user self-verification is now in progress (in their next
+            // digest)
+            adminNotificationDigest.record( "Innovation Portal - New User Verification Requested", userDescription, EmailTemplateNames.ADMIN_USER_VERIFICATION_REQUESTED);
         }
-        catch ( DataIntegrityViolationException e) {
-            throw new DuplicateKeyException( "Duplicate Username: " + userDTO.getUsername());
+        else {
+            // Tell the user that their registration request was received but is now awaiting review
+            notificationService.queue( user.getEmailAddress(), "Innovation Portal - Registration Received", EmailTemplateNames.USER_REGISTERED);
+
+            // Tell the system administrator(s) that a new user registration request is now pending (in their next
+            // digest)
+            adminNotificationDigest.record( "Innovation Portal - New User Registration", userDescription, EmailTemplateNames.ADMIN_USER_REGISTERED);
         }
-        return asDTO( result);
     }
 
     /**
@@ -206,20 +768,19 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
 
         // Look up the user's account based on the passed in token. If found, check that the couple of extra details
         // match the account details
-        String encryptedToken = userProvider.encryptPassword( userDTO.getToken());
-        User user = userRepository.verifyByToken( userProvider.encryptPassword( userDTO.getToken()));
+        User user = tokenService.findUser( userDTO.getToken(), UserToken.Purpose.VERIFICATION);
         if ( user != null && user.getFirstName().equalsIgnoreCase( userDTO.getFirstName()) && user.getLastName().equalsIgnoreCase( userDTO.getLastName())) {
             user.setStatus( User.Status.ACTIVE);
             user.setActive( User.USER_ACTIVE);
-            user.setToken( null);
-            save( user);
+            tokenService.revokeTokens( user, UserToken.Purpose.VERIFICATION);
+            persist( user);
             result = true;
 
             // Tell the user that their registration is now complete
-            emailSender.sendHTMLMessage( user.getEmailAddress(), "Innovation Portal - Registration Completed", EmailTemplateNames.USER_VERIFIED);
+            notificationService.queue( user.getEmailAddress(), "Innovation Portal - Registration Completed", EmailTemplateNames.USER_VERIFIED);
 
-            // Tell the system administrator(s) that a new user registration is now complete
-            emailSender.sendHTMLMessage( configCache.emailAdminArray(), "Innovation Portal - New User Verified", user.getFirstName() + " " + user.getLastName() + " (" + user.getEmailAddress() + ")", EmailTemplateNames.ADMIN_USER_VERIFIED);
+            // Tell the system administrator(s) that a new user registration is now complete (in their next digest)
+            adminNotificationDigest.record( "Innovation Portal - New User Verified", user.getFirstName() + " " + user.getLastName() + " (" + user.getEmailAddress() + ")", EmailTemplateNames.ADMIN_USER_VERIFIED);
 
         }
         else {
@@ -229,29 +790,33 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserDTO updateCurrentUser( UserDTO userDTO) throws UsernameNotFoundException {
-        UserDTO result = null;
+        String encryptedPassword = passwordHasher.hash( userDTO.getPassword());
+        String encryptedNewPassword = userDTO.getNewPassword() != null ? passwordHasher.hash( userDTO.getNewPassword()) : null;
 
-        // Look up the user's details based on the authenticated user email address and the passed in password
-        User user = userRepository.findByUsernameAndPassword( getCurrentUser().getEmailAddress(), userProvider.encryptPassword( userDTO.getPassword()));
-        if ( user == null) {
-            throw new UsernameNotFoundException( getCurrentUser().getEmailAddress());
-        }
-        else if ( getCurrentUser().getOid().equals( user.getOid())) {
-            // We've found a user, and its the same one as the authenticated user, so now we apply the updates. These
-            // are limited to just first name, last name, and (optionally) password
+        return transactionTemplate.execute( status -> {
+            // Look up the authenticated user by oid (a stateless session's user carries no email address), and check
+            // the passed in password
+            Long currentUserOid = getCurrentUser().getOid();
+            User user = currentUserOid != null ? userRepository.findById( currentUserOid).filter( User::isActive).orElse( null) : null;
+            if ( user == null || !userRepository.hasPassword( currentUserOid, encryptedPassword)) {
+                throw new UsernameNotFoundException( "User id: " + currentUserOid);
+            }
+
+            // Apply the updates. These are limited to just first name, last name, and (optionally) password
             user.setFirstName( userDTO.getFirstName());
             user.setLastName( userDTO.getLastName());
-            if ( userDTO.getNewPassword() != null) {
-                user.setPassword( userProvider.encryptPassword( userDTO.getNewPassword()));
+            if ( encryptedNewPassword != null) {
+                user.setPassword( encryptedNewPassword);
             }
 
             // Persist the updates and tell the user that they've successfully updated their details
-            User userUpdated = save( user);
-            result = asDTO( userUpdated);
-            emailSender.sendHTMLMessage( result.getEmailAddress(), "Innovation Portal - User Updated", EmailTemplateNames.USER_UPDATED);
-        }
-        return result;
+            User userUpdated = persist( user);
+            UserDTO result = asDTO( userUpdated);
+            notificationService.queue( result.getEmailAddress(), "Innovation Portal - User Updated", EmailTemplateNames.USER_UPDATED);
+            return result;
+        });
     }
 
     /**
@@ -272,17 +837,12 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
             throw new UsernameNotFoundException( userDTO.getEmailAddress());
         }
         else {
-            // We've found a user, so generate the UUID token for inclusion in an email
-            String token = UUID.randomUUID().toString();
-
-            // Persist the encrypted token alongside the user's details
-            String encryptedToken = userProvider.encryptPassword( token);
-            user.setToken( encryptedToken);
-            save( user);
+            // We've found a user, so generate (and store a digest of) the token for inclusion in an email
+            String token = tokenService.issueToken( user, UserToken.Purpose.RESET);
             result = true;
 
             // Tell the user that their password reset is now in progress and needs further action
-            emailSender.sendHTMLMessage( user.getEmailAddress(), "Innovation Portal - Password Reset Requested", token, EmailTemplateNames.USER_RESET_REQUESTED);
+            notificationService.queue( user.getEmailAddress(), "Innovation Portal - Password Reset Requested", token, EmailTemplateNames.USER_RESET_REQUESTED);
         }
         return result;
     }
@@ -295,188 +855,491 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
      * @throws UsernameNotFoundException Thrown if no user details match the supplied token.
      */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Boolean finishResetUser( UserDTO userDTO) throws UsernameNotFoundException {
-        Boolean result = false;
-
         // Validate the new passwords
-        if ( userDTO.getPassword() != null && userDTO.getNewPassword() != null && userDTO.getPassword().equals( userDTO.getNewPassword())) {
+        if ( userDTO.getPassword() == null || userDTO.getNewPassword() == null || !userDTO.getPassword().equals( userDTO.getNewPassword())) {
+            return false;
+        }
+        String encryptedPassword = passwordHasher.hash( userDTO.getPassword());
 
+        return transactionTemplate.execute( status -> {
             // Look up the user's account based on the passed in token
-            User user = userRepository.findByToken( userProvider.encryptPassword( userDTO.getToken()));
-            if ( user == null) {
+            User user = tokenService.findUser( userDTO.getToken(), UserToken.Purpose.RESET);
+            if ( user == null || !user.isActive()) {
                 throw new UsernameNotFoundException( "");
             }
-            else {
-                user.setPassword( userProvider.encryptPassword( userDTO.getPassword()));
-                user.setToken( null);
-                save( user);
-                result = true;
+            user.setPassword( encryptedPassword);
+            tokenService.revokeTokens( user, UserToken.Purpose.RESET);
+            persist( user);
 
-                // Tell the user that their password reset is complete
-                emailSender.sendHTMLMessage( user.getEmailAddress(), "Innovation Portal - Password Reset Completed", EmailTemplateNames.USER_RESET);
-            }
-        }
-        return result;
+            // Tell the user that their password reset is complete
+            notificationService.queue( user.getEmailAddress(), "Innovation Portal - Password Reset Completed", EmailTemplateNames.USER_RESET);
+            return true;
+        });
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserDTO signin( String userName, String password) throws UsernameNotFoundException {
-        User user = userRepository.findByUsernameAndPassword( userName, userProvider.encryptPassword( password));
-        if ( user == null) {
-            throw new UsernameNotFoundException( userName);
-        }
-        // User found - prepare the token and save in the User Provider's context
-        UserRole role = user.getUserRole();
-        List<Permission> authorities = new ArrayList<>();
-        authorities.addAll( role.getUserPermissionList().stream().map( permission -> new PermissionImpl( permission.getName())).collect( Collectors.toList()));
-        Map<String,String> credentials = new HashMap<>();
-        credentials.put( "username", userName);
+        String encryptedPassword = passwordHasher.hash( password);
+        UsernamePasswordAuthenticationToken auth = transactionTemplate.execute( status -> {
+            User user = userRepository.findByUsernameAndPassword( userName, encryptedPassword);
+            if ( user == null) {
+                throw new UsernameNotFoundException( userName);
+            }
+            // User found - prepare the token for the User Provider's context. The authorities are the role's shared,
+            // immutable snapshot
+            List<Permission> authorities = userRoleAuthorityCache.get( user.getUserRole()).getAuthorities();
+            Map<String,String> credentials = new HashMap<>();
+            credentials.put( "username", userName);
 
-        UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken( userName, credentials, authorities);
-        auth.setDetails( this.asDTO( user));
-        userProvider.setAuthentication( auth);
+            UsernamePasswordAuthenticationToken result = new UsernamePasswordAuthenticationToken( userName, credentials, authorities);
+            result.setDetails( asDTO( user));
+            return result;
+        });
+        if ( !statelessSessions) {
+            // With stateless sessions the caller is given a session token instead, so no server-side session is made
+            userProvider.setAuthentication( auth);
+        }
 
-        UserDTO result = asDTO( user);
-        return result;
+        // The caller gets its own copy, so nothing it does to the result can change the authentication's details
+        return userMapper.copy( (UserDTO) auth.getDetails());
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Boolean signout() {
+        // Any stateless session tokens the user holds must stop working too
+        UserDTO user = userProvider.getAuthenticatedUser();
+        if ( user != null) {
+            sessionTokenService.revoke( user.getOid());
+        }
         userProvider.clearAuthentication();
         return Boolean.TRUE;
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserDTO updateUser( Long id, UserDTO dto) throws DuplicateKeyException, InvalidParameterException {
+        boolean passwordChanged = dto.getPassword() != null && dto.getPassword().length() > 0;
+        String encryptedPassword = passwordChanged ? passwordHasher.hash( dto.getPassword()) : null;
+        return transactionTemplate.execute( status -> updateUser( id, dto, encryptedPassword));
+    }
+
+    private UserDTO updateUser( Long id, UserDTO dto, String encryptedPassword) throws DuplicateKeyException, InvalidParameterException {
         UserDTO result = null;
         User user = userRepository.getOne( id);
-        UserDTO dtoOriginal = asDTO( user);
+        checkVersion( user, dto.getVersion());
+        boolean wasActive = user.isActive();
+        Long previousRoleId = roleIdOf( user);
 
-        // Apply updates to the retrieved user details
+        // Apply updates to the retrieved user details. The role is only resolved if it has actually changed
         user.setUsername( dto.getUsername());
         user.setFirstName( dto.getFirstName());
         user.setLastName( dto.getLastName());
         user.setEmailAddress( dto.getUsername());
-        if ( dto.getPassword() != null && dto.getPassword().length() > 0) {
-            user.setPassword( userProvider.encryptPassword( dto.getPassword()));
+        boolean passwordChanged = encryptedPassword != null;
+        if ( passwordChanged) {
+            user.setPassword( encryptedPassword);
         }
         user.setSecurityLevel( User.SecurityLevel.valueOf( dto.getSecurityLevel()));
-        user.setUpdatedDate( LocalDateTime.now());
-        user.setUserRole( userRoleService.findEntity( dto.getRoleId()));
+        if ( !Objects.equals( previousRoleId, dto.getRoleId())) {
+            user.setUserRole( userRoleLookup.findEntity( dto.getRoleId()));
+        }
         user.setStatus( dto.isActive() ? User.Status.ACTIVE : User.Status.DISABLED);
         user.setActive( dto.isActive() ? User.USER_ACTIVE : User.USER_INACTIVE);
 
         // Persist the changes, and prepare to return the new details. Catch any data integrity violation and
         // re-throw as a declared exception for our caller to process
         try {
-            User userUpdated = save(user);
+            User userUpdated = persist( user);
             result = asDTO(userUpdated);
+            notifyUpdated( userUpdated, wasActive, previousRoleId, passwordChanged);
+        }
+        catch ( DataIntegrityViolationException e) {
+            throw new DuplicateKeyException( "Duplicate!");
+        }
+        return result;
+    }
+
+    /**
+     * Applies a partial update to a user: only the supplied fields are changed, and only the columns that actually
+     *  change are written. Activation, password and role changes are detected from the fields changed, rather than
+     *  from a snapshot of the whole user.
+     * @param id The user's oid.
+     * @param patchDTO The fields to change, and the version of the user they were based on.
+     * @return The updated user, with its new version.
+     *
+     * @throws UsernameNotFoundException if there is no such user.
+     * @throws ObjectOptimisticLockingFailureException if the user has changed since the supplied version.
+     * @throws DuplicateKeyException if the new username is already registered.
+     * @throws InvalidParameterException if the version is missing, or the security level or role is unknown.
+     * @throws AccessDeniedException unless the current user is an admin (who may change any field of any user), or is
+     *  the user being changed, changing only their first name, last name or password, and supplying their current
+     *  password to change it.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UserDTO patchUser( Long id, UserPatchDTO patchDTO) throws UsernameNotFoundException, DuplicateKeyException, InvalidParameterException, AccessDeniedException {
+        if ( patchDTO.getVersion() == null) {
+            throw new InvalidParameterException( "Missing version");
+        }
+        boolean passwordChanged = patchDTO.getPassword() != null && patchDTO.getPassword().length() > 0;
 
-            // Send an appropriate email to the user, depending on what changed
-            if (!dtoOriginal.isActive() && result.isActive()) {
-                // The user is NOW active (and was previously inactive)
-                emailSender.sendHTMLMessage(result.getEmailAddress(), "Innovation Portal - User Activated", EmailTemplateNames.USER_ACTIVATED);
+        // Authorise before any (expensive) password hashing
+        UserDTO currentUser = getCurrentUser();
+        boolean selfService = !currentUser.isAdminUser();
+        if ( selfService) {
+            if ( !id.equals( currentUser.getOid())) {
+                throw new AccessDeniedException( "Only an admin may change another user");
             }
-            else if (result.isActive() && dto.getPassword() != null && dto.getPassword().length() > 0) {
-                // A new password has been saved
-                emailSender.sendHTMLMessage(result.getEmailAddress(), "Innovation Portal - Password Reset", EmailTemplateNames.USER_RESET);
+            if ( patchDTO.getUsername() != null || patchDTO.getSecurityLevel() != null || patchDTO.getRoleId() != null || patchDTO.getActive() != null) {
+                throw new AccessDeniedException( "Only an admin may change a username, access level, role or activation");
             }
-            else if (result.isActive()) {
-                // Something else was updated
-                emailSender.sendHTMLMessage(result.getEmailAddress(), "Innovation Portal - User Updated", EmailTemplateNames.USER_UPDATED);
+            if ( passwordChanged && ( patchDTO.getCurrentPassword() == null || patchDTO.getCurrentPassword().isEmpty())) {
+                throw new AccessDeniedException( "The current password is required to change it");
             }
         }
+        String encryptedPassword = passwordChanged ? passwordHasher.hash( patchDTO.getPassword()) : null;
+        String encryptedCurrentPassword = selfService && passwordChanged ? passwordHasher.hash( patchDTO.getCurrentPassword()) : null;
+        return transactionTemplate.execute( status -> patchUser( id, patchDTO, encryptedPassword, encryptedCurrentPassword));
+    }
+
+    /**
+     * @param encryptedCurrentPassword If not null, the user's password must be this, or the patch is refused.
+     */
+    private UserDTO patchUser( Long id, UserPatchDTO patchDTO, String encryptedPassword, String encryptedCurrentPassword)
+            throws UsernameNotFoundException, DuplicateKeyException, InvalidParameterException, AccessDeniedException {
+        User user = userRepository.findById( id).orElseThrow( () -> new UsernameNotFoundException( "User id: " + id));
+        checkVersion( user, patchDTO.getVersion());
+        // User.getPassword() never reveals the stored password, so it is compared by the database, as at signin
+        if ( encryptedCurrentPassword != null && !userRepository.hasPassword( id, encryptedCurrentPassword)) {
+            throw new AccessDeniedException( "The current password is wrong");
+        }
+        boolean wasActive = user.isActive();
+        Long previousRoleId = roleIdOf( user);
+        boolean changed = false;
+
+        if ( patchDTO.getUsername() != null && !patchDTO.getUsername().equals( user.getUsername())) {
+            user.setUsername( patchDTO.getUsername());
+            user.setEmailAddress( patchDTO.getUsername());
+            changed = true;
+        }
+        if ( patchDTO.getFirstName() != null && !patchDTO.getFirstName().equals( user.getFirstName())) {
+            user.setFirstName( patchDTO.getFirstName());
+            changed = true;
+        }
+        if ( patchDTO.getLastName() != null && !patchDTO.getLastName().equals( user.getLastName())) {
+            user.setLastName( patchDTO.getLastName());
+            changed = true;
+        }
+        boolean passwordChanged = encryptedPassword != null;
+        if ( passwordChanged) {
+            user.setPassword( encryptedPassword);
+            changed = true;
+        }
+        if ( patchDTO.getSecurityLevel() != null) {
+            User.SecurityLevel securityLevel;
+            try {
+                securityLevel = User.SecurityLevel.valueOf( patchDTO.getSecurityLevel());
+            }
+            catch ( IllegalArgumentException iae) {
+                throw new InvalidParameterException( "Bad Access Level name: " + patchDTO.getSecurityLevel());
+            }
+            if ( securityLevel != user.getSecurityLevel()) {
+                user.setSecurityLevel( securityLevel);
+                changed = true;
+            }
+        }
+        if ( patchDTO.getRoleId() != null && !patchDTO.getRoleId().equals( previousRoleId)) {
+            UserRole userRole = userRoleLookup.findEntity( patchDTO.getRoleId());
+            if ( userRole == null) {
+                throw new InvalidParameterException( "Bad Role id: " + patchDTO.getRoleId());
+            }
+            user.setUserRole( userRole);
+            changed = true;
+        }
+        if ( patchDTO.getActive() != null && patchDTO.getActive() != wasActive) {
+            user.setStatus( patchDTO.getActive() ? User.Status.ACTIVE : User.Status.DISABLED);
+            user.setActive( patchDTO.getActive() ? User.USER_ACTIVE : User.USER_INACTIVE);
+            changed = true;
+        }
+        if ( !changed) {
+            return asDTO( user);
+        }
+
+        // Flush here, so that a duplicate username or a concurrent update is reported by this call, not at commit
+        try {
+            User userUpdated = persist( user);
+            userRepository.flush();
+            notifyUpdated( userUpdated, wasActive, previousRoleId, passwordChanged);
+            return asDTO( userUpdated);
+        }
         catch ( DataIntegrityViolationException e) {
-            throw new DuplicateKeyException( "Duplicate!");
+            throw new DuplicateKeyException( "Duplicate Username: " + patchDTO.getUsername());
+        }
+    }
+
+    private static void checkVersion( User user, Long expectedVersion) throws ObjectOptimisticLockingFailureException {
+        if ( expectedVersion != null && !expectedVersion.equals( user.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException( User.class, user.getOid());
+        }
+    }
+
+    private static Long roleIdOf( User user) {
+        return user.getUserRole() != null ? user.getUserRole().getOid() : null;
+    }
+
+    /**
+     * Revokes the user's session tokens if needed, and sends them an appropriate email, depending on what changed.
+     */
+    private void notifyUpdated( User user, boolean wasActive, Long previousRoleId, boolean passwordChanged) {
+        if ( !user.isActive() || !Objects.equals( previousRoleId, roleIdOf( user))) {
+            // Session tokens carry the user's permissions, so a disabled user's, or a changed role's, must go
+            sessionTokenService.revoke( user.getOid());
+        }
+
+        if ( !wasActive && user.isActive()) {
+            // The user is NOW active (and was previously inactive)
+            notificationService.queue( user.getEmailAddress(), "Innovation Portal - User Activated", EmailTemplateNames.USER_ACTIVATED);
+        }
+        else if ( user.isActive() && passwordChanged) {
+            // A new password has been saved
+            notificationService.queue( user.getEmailAddress(), "Innovation Portal - Password Reset", EmailTemplateNames.USER_RESET);
+        }
+        else if ( user.isActive()) {
+            // Something else was updated
+            notificationService.queue( user.getEmailAddress(), "Innovation Portal - User Updated", EmailTemplateNames.USER_UPDATED);
         }
-        return result;
     }
 
+    /**
+     * Applies the same change (activation, deactivation and/or a new role) to many users at once, e.g. "activate
+     *  these 500 users". The changes are applied with set-based UPDATEs, a chunk of users at a time, and only to the
+     *  users they actually change. Activation transitions are likewise found in SQL, and the resulting emails queued
+     *  together.
+     * @param bulkUpdateDTO The user ids, and the change to apply to them.
+     * @return The total number of user rows changed.
+     *
+     * @throws InvalidParameterException if there are no user ids, or the role id doesn't exist.
+     */
     @Override
-    public User asEntity( UserDTO dto) {
-        User result = super.asEntity( dto);
-        if ( result != null) {
-            result.setOid( dto.getOid());
-            result.setUsername( dto.getUsername());
-            result.setFirstName( dto.getFirstName());
-            result.setLastName( dto.getLastName());
-            result.setEmailAddress( dto.getEmailAddress());
-            result.setStatus( User.Status.valueOf( dto.getStatus()));
-            result.setSecurityLevel( User.SecurityLevel.valueOf( dto.getSecurityLevel()));
-            result.setActive( dto.isActive() ? User.USER_ACTIVE : User.USER_INACTIVE);
-            result.setCreatedDate( dto.getCreatedDate());
-            result.setUpdatedDate( dto.getUpdatedDate());
-            result.setUserRole( userRoleService.findEntity( dto.getRoleId()));
+    public Integer updateUsers( UserBulkUpdateDTO bulkUpdateDTO) throws InvalidParameterException {
+        if ( bulkUpdateDTO.getUserIds() == null || bulkUpdateDTO.getUserIds().isEmpty()) {
+            throw new InvalidParameterException( "Missing user ids");
+        }
+        UserRole userRole = null;
+        if ( bulkUpdateDTO.getRoleId() != null) {
+            userRole = userRoleLookup.findEntity( bulkUpdateDTO.getRoleId());
+            if ( userRole == null) {
+                throw new InvalidParameterException( "Bad Role id: " + bulkUpdateDTO.getRoleId());
+            }
+        }
+
+        int result = 0;
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> activated = new LinkedHashSet<>();
+        List<String> updated = new ArrayList<>();
+        for ( List<Long> chunk : chunks( new ArrayList<>( new LinkedHashSet<>( bulkUpdateDTO.getUserIds())), BULK_CHUNK_SIZE)) {
+            // A row that is both (de)activated and moved to the new role is counted by both updates, but is one row
+            if ( userRole != null && Boolean.TRUE.equals( bulkUpdateDTO.getActive())) {
+                result -= userRepository.countToActivateAndChangeRole( chunk, userRole);
+            }
+            else if ( userRole != null && Boolean.FALSE.equals( bulkUpdateDTO.getActive())) {
+                result -= userRepository.countToDeactivateAndChangeRole( chunk, userRole);
+            }
+            if ( Boolean.TRUE.equals( bulkUpdateDTO.getActive())) {
+                activated.addAll( userRepository.findEmailAddressesToActivate( chunk));
+                result += userRepository.activate( chunk, now);
+            }
+            else if ( Boolean.FALSE.equals( bulkUpdateDTO.getActive())) {
+                result += userRepository.deactivate( chunk, now);
+            }
+            if ( userRole != null) {
+                updated.addAll( userRepository.findActiveEmailAddressesToChangeRole( chunk, userRole));
+                result += userRepository.changeRole( chunk, userRole, now);
+            }
+            stampAtCommit( chunk, now);
+            evictCachedUsers( chunk);
+            readYourWrites.markWrite();
+            if ( Boolean.FALSE.equals( bulkUpdateDTO.getActive()) || userRole != null) {
+                chunk.forEach( sessionTokenService::revoke);
+            }
+        }
+
+        // Tell each affected user what changed: newly activated users just need to know they're active
+        for ( String emailAddress : activated) {
+            notificationService.queue( emailAddress, "Innovation Portal - User Activated", EmailTemplateNames.USER_ACTIVATED);
+        }
+        for ( String emailAddress : updated) {
+            if ( !activated.contains( emailAddress)) {
+                notificationService.queue( emailAddress, "Innovation Portal - User Updated", EmailTemplateNames.USER_UPDATED);
+            }
         }
         return result;
     }
 
+    @Override
+    public User asEntity( UserDTO dto) {
+        return userMapper.toEntity( dto);
+    }
+
     @Override
     public UserDTO asDTO( User entity) {
-        UserDTO result = super.asDTO( entity);
-        if ( result != null) {
-            result.setOid( entity.getOid());
-            result.setToken( entity.getToken());
-            result.setUsername( entity.getUsername());
-            result.setPassword( "");
-            result.setFirstName( entity.getFirstName());
-            result.setLastName( entity.getLastName());
-            result.setFullName( entity.getFirstName() + " " + entity.getLastName());
-            result.setEmailAddress( entity.getEmailAddress());
-            result.setStatus( entity.getStatus().name());
-            result.setActive( entity.isActive());
-            result.setSecurityLevel( entity.getSecurityLevel().name());
-            result.setCreatedDate( entity.getCreatedDate());
-            result.setUpdatedDate( entity.getUpdatedDate());
-            if ( entity.getUserRole() != null) {
-                result.setRoleName(entity.getUserRole().getName());
-                result.setRoleId(entity.getUserRole().getOid());
-            }
-            result.setUserPermissions( entity.getUserRole().getUserPermissionList().stream().map( permission -> new UserPermissionDTO( permission.getOid(), permission.getName())).collect( Collectors.toList()));
-        }
-        return result;
+        return userMapper.toDTO( entity);
     }
 
     @Override
     public UserDTO asSummaryDTO( User entity) {
-        UserDTO result = super.asDTO( entity);
-        if ( result != null) {
-            result.setOid( entity.getOid());
-            result.setUsername( entity.getUsername());
-            result.setPassword( "");
-            result.setFirstName( entity.getFirstName());
-            result.setLastName( entity.getLastName());
-            result.setFullName( entity.getFirstName() + " " + entity.getLastName());
-            result.setEmailAddress( entity.getEmailAddress());
-            result.setStatus( entity.getStatus().name());
-            result.setActive( entity.isActive());
-            result.setCreatedDate( entity.getCreatedDate());
-            result.setUpdatedDate( entity.getUpdatedDate());
-        }
-        return result;
+        return userMapper.toSummaryDTO( entity);
     }
 
     private boolean userEmailMatches( String emailAddress) {
         String normalisedEmailAddress = emailAddress.toLowerCase().trim();
-        List<String> emailMatcher = configCache.regEmailMatcherList();
-        for ( String regEmailMatcher : configCache.regEmailMatcherList()) {
-            if ( normalisedEmailAddress.endsWith( regEmailMatcher)) {
-                return true;
+        return registrationEmailMatcher.matches( normalisedEmailAddress);
+    }
+
+    /**
+     * Saves a changed user, stamping its updated date so that the change appears in the change feed. The writer's
+     *  reads are kept on the primary database for a while afterwards, so they see their own change.
+     */
+    private User persist( User user) {
+        user.setUpdatedDate( LocalDateTime.now());
+        User result = save( user);
+        stampAtCommit( Collections.singletonList( result.getOid()), result.getUpdatedDate());
+        readYourWrites.markWrite();
+        applicationEventPublisher.publishEvent( new UserChangeDTO( result));
+        evictCachedUsers( Collections.singletonList( result.getOid()));
+        return result;
+    }
+
+    /**
+     * Re-stamps changed users' updated dates as the current transaction commits. The change feed reads users in
+     *  updated date order, so a row stamped when it was changed, but committed later by a long transaction, would
+     *  become visible behind a cursor that had already passed its updated date, and never be returned. Stamped at
+     *  commit, it only has to be visible within the feed's settle window.
+     * @param oids The changed (saved) users.
+     * @param stampedAt The updated date the changes were stamped with, or earlier.
+     */
+    private void stampAtCommit( Collection<Long> oids, LocalDateTime stampedAt) {
+        if ( !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        UpdatedDateStamp stamp = null;
+        for ( TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if ( synchronization instanceof UpdatedDateStamp) {
+                stamp = (UpdatedDateStamp) synchronization;
+            }
+        }
+        if ( stamp == null) {
+            stamp = new UpdatedDateStamp( stampedAt);
+            TransactionSynchronizationManager.registerSynchronization( stamp);
+        }
+        stamp.add( oids, stampedAt);
+    }
+
+    /**
+     * The users changed in one transaction, re-stamped just before it commits.
+     */
+    private final class UpdatedDateStamp extends TransactionSynchronizationAdapter {
+        private final Set<Long> oids = new LinkedHashSet<>();
+        private LocalDateTime since;
+
+        UpdatedDateStamp( LocalDateTime since) {
+            this.since = since;
+        }
+
+        void add( Collection<Long> changedOids, LocalDateTime stampedAt) {
+            oids.addAll( changedOids);
+            if ( stampedAt.isBefore( since)) {
+                since = stampedAt;
+            }
+        }
+
+        @Override
+        public void beforeCommit( boolean readOnly) {
+            // A second's leeway, in case the column rounds stamps to whole seconds
+            LocalDateTime commitDate = LocalDateTime.now();
+            for ( List<Long> chunk : chunks( new ArrayList<>( oids), BULK_CHUNK_SIZE)) {
+                userRepository.restampUpdatedDate( chunk, since.minusSeconds( 1), commitDate);
             }
         }
-        return false;
     }
 
-    private Sort sortById() {
-        return new Sort( Sort.Direction.DESC, "oid");
+    /**
+     * Evicts changed users from the users cache. We evict immediately, and again once the change commits, so that an
+     *  entry re-read from the old data in between doesn't survive.
+     */
+    private void evictCachedUsers( Collection<Long> oids) {
+        if ( usersCache == null) {
+            return;
+        }
+        oids.forEach( usersCache::evict);
+        if ( TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<Long> committedOids = new ArrayList<>( oids);
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    committedOids.forEach( usersCache::evict);
+                }
+            });
+        }
+    }
+
+    private static <T> List<List<T>> chunks( List<T> list, int chunkSize) {
+        List<List<T>> result = new ArrayList<>();
+        for ( int i = 0; i < list.size(); i += chunkSize) {
+            result.add( list.subList( i, Math.min( i + chunkSize, list.size())));
+        }
+        return result;
+    }
+
+    /**
+     * Walks the user table one keyset page at a time, reading the next page only when the current one is used up.
+     */
+    private class UserPageSpliterator extends Spliterators.AbstractSpliterator<UserDTO> {
+        private final int pageSize;
+        private Long lastSeenOid;
+        private Iterator<UserDTO> page = Collections.emptyIterator();
+        private boolean exhausted;
+
+        UserPageSpliterator( int pageSize) {
+            super( Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean tryAdvance( Consumer<? super UserDTO> action) {
+            if ( !page.hasNext()) {
+                if ( exhausted) {
+                    return false;
+                }
+                List<UserDTO> users = pageTransactionTemplate.execute( status -> {
+                    List<UserDTO> result = findPage( lastSeenOid, pageSize);
+                    entityManager.clear();
+                    return result;
+                });
+                exhausted = users.size() < pageSize;
+                if ( users.isEmpty()) {
+                    return false;
+                }
+                lastSeenOid = users.get( users.size() - 1).getOid();
+                page = users.iterator();
+            }
+            action.accept( page.next());
+            return true;
+        }
     }
 
+    /**
+     * A granted permission. Instances are immutable, as they are shared by every authentication with the same role.
+     */
     public interface Permission extends GrantedAuthority {
         public String getName();
-        public void setName(String name);
     }
-    public class PermissionImpl implements Permission {
-        String name;
+    public static final class PermissionImpl implements Permission {
+        private final String name;
 
         public PermissionImpl( String name) {
             this.name = name;
@@ -484,9 +1347,6 @@ public class UserServiceImpl extends BaseServiceImpl<User, UserDTO, Long> implem
         public String getName() {
             return name;
         }
-        public void setName(String name) {
-            this.name = name;
-        }
 
         @Override
         public String getAuthority() {
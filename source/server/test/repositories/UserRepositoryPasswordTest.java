@@ -0,0 +1,69 @@
+package com.fujitsu.digital.repositories;
+
+import com.fujitsu.digital.domain.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The (hashed) password checks, which compare in the database since User.getPassword() never reveals the password.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class UserRepositoryPasswordTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+    private User otherUser;
+
+    @Before
+    public void setUp() {
+        user = givenUser( "first.last@example.com", "hashed-password");
+        otherUser = givenUser( "other.user@example.com", "other-hashed-password");
+    }
+
+    @Test
+    public void hasPassword() {
+        assertTrue( userRepository.hasPassword( user.getOid(), "hashed-password"));
+    }
+
+    @Test
+    public void hasPasswordIsFalseForWrongPassword() {
+        assertFalse( userRepository.hasPassword( user.getOid(), "wrong-password"));
+    }
+
+    @Test
+    public void hasPasswordIsFalseForAnotherUsersPassword() {
+        assertFalse( userRepository.hasPassword( user.getOid(), "other-hashed-password"));
+        assertTrue( userRepository.hasPassword( otherUser.getOid(), "other-hashed-password"));
+    }
+
+    private User givenUser( String username, String password) {
+        User result = new User();
+        result.setUsername( username);
+        result.setPassword( password);
+        result.setFirstName( "First");
+        result.setLastName( "Last");
+        result.setEmailAddress( username);
+        result.setStatus( User.Status.ACTIVE);
+        result.setActive( User.USER_ACTIVE);
+        result.setSecurityLevel( User.SecurityLevel.PUBLIC);
+        result.setCreatedDate( LocalDateTime.now());
+        result.setUpdatedDate( LocalDateTime.now());
+        return entityManager.persistFlushFind( result);
+    }
+}
@@ -0,0 +1,147 @@
+package com.fujitsu.digital.repositories;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.UserPermission;
+import com.fujitsu.digital.domain.UserRole;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Guards against lazy-load N+1 selects on the user list and signin paths: the number of SQL statements needed to
+ *  load users and walk their roles and permissions (as DTO mapping does) must not grow with the number of users.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class UserRepositoryStatementCountTest {
+
+    private static final String PERMISSION_NAME = "IP_PERMISSION_0";
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Statistics statistics;
+    private final List<UserRole> roles = new ArrayList<>();
+    private int userCount;
+
+    @Before
+    public void setUp() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap( SessionFactory.class).getStatistics();
+        roles.add( givenRole( "ROLE_A", "IP_PERMISSION_0", "IP_PERMISSION_1", "IP_PERMISSION_2"));
+        roles.add( givenRole( "ROLE_B", "IP_PERMISSION_0", "IP_PERMISSION_3"));
+    }
+
+    @Test
+    public void findFirstPageIsConstant() {
+        assertConstant( () -> userRepository.findFirstPage( PageRequest.of( 0, 1000)));
+    }
+
+    @Test
+    public void findAllFetchRoleIsConstant() {
+        assertConstant( () -> userRepository.findAllFetchRole());
+    }
+
+    @Test
+    public void findByUserRoleIsConstant() {
+        assertConstant( () -> userRepository.findByUserRole( roles.get( 0)), 1);
+    }
+
+    @Test
+    public void findAllWithPermissionIsConstant() {
+        assertConstant( () -> userRepository.findAllWithPermission( PERMISSION_NAME));
+    }
+
+    @Test
+    public void signinLookupIsOneStatement() {
+        givenUsers( 10);
+        long statements = statementsFor( () -> {
+            List<User> result = new ArrayList<>();
+            result.add( userRepository.findByUsernameAndPassword( " First.Last1@Example.com ", "password1"));
+            return result;
+        });
+        assertEquals( 1, statements);
+    }
+
+    private void assertConstant( Supplier<List<User>> query) {
+        assertConstant( query, roles.size());
+    }
+
+    /**
+     * Loads and walks the users, then does so again with five times as many users, and checks that both took the
+     *  same number of statements: one for the users plus one per role for its permissions.
+     * @param roleCount The number of distinct roles the query's users have.
+     */
+    private void assertConstant( Supplier<List<User>> query, int roleCount) {
+        givenUsers( 10);
+        long fewUsers = statementsFor( query);
+        givenUsers( 40);
+        long manyUsers = statementsFor( query);
+
+        assertEquals( "statements for 10 users vs. 50 users", fewUsers, manyUsers);
+        assertEquals( 1 + roleCount, manyUsers);
+    }
+
+    private long statementsFor( Supplier<List<User>> query) {
+        entityManager.clear();
+        statistics.clear();
+        List<User> users = query.get();
+        for ( User user : users) {
+            user.getUserRole().getName();
+            user.getUserRole().getUserPermissionList().forEach( UserPermission::getName);
+        }
+        return statistics.getPrepareStatementCount();
+    }
+
+    private UserRole givenRole( String name, String... permissionNames) {
+        List<UserPermission> permissions = new ArrayList<>( permissionNames.length);
+        for ( String permissionName : permissionNames) {
+            UserPermission permission = new UserPermission();
+            permission.setName( permissionName);
+            permissions.add( entityManager.persist( permission));
+        }
+        UserRole role = new UserRole();
+        role.setName( name);
+        role.setUpdatedDate( LocalDateTime.now());
+        role.setUserPermissionList( permissions);
+        return entityManager.persistFlushFind( role);
+    }
+
+    private void givenUsers( int count) {
+        for ( int i = 0; i < count; i++) {
+            int n = ++userCount;
+            User user = new User();
+            user.setUsername( "first.last" + n + "@example.com");
+            user.setPassword( "password" + n);
+            user.setFirstName( "First" + n);
+            user.setLastName( "Last" + n);
+            user.setEmailAddress( user.getUsername());
+            user.setStatus( User.Status.ACTIVE);
+            user.setActive( User.USER_ACTIVE);
+            user.setSecurityLevel( User.SecurityLevel.PUBLIC);
+            user.setCreatedDate( LocalDateTime.now());
+            user.setUpdatedDate( LocalDateTime.now());
+            user.setUserRole( roles.get( n % roles.size()));
+            entityManager.persist( user);
+        }
+        entityManager.flush();
+    }
+}
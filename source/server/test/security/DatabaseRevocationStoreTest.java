@@ -0,0 +1,88 @@
+package com.fujitsu.digital.security;
+
+import com.fujitsu.digital.repositories.SessionRevocationRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Two DatabaseRevocationStores on one database, standing in for two nodes: a revocation made on one is honoured by
+ *  the other once it refreshes.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class DatabaseRevocationStoreTest {
+
+    @Autowired
+    private SessionRevocationRepository sessionRevocationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private DatabaseRevocationStore node1;
+    private DatabaseRevocationStore node2;
+
+    @Before
+    public void setUp() {
+        sessionRevocationRepository.deleteAll();
+        node1 = store();
+        node2 = store();
+    }
+
+    @Test
+    public void revocationIsSharedOnRefresh() {
+        node1.revoke( 7L, 1000L);
+
+        assertEquals( 1000L, node1.revokedAt( 7L));
+        assertEquals( 0L, node2.revokedAt( 7L));
+        node2.refresh();
+        assertEquals( 1000L, node2.revokedAt( 7L));
+    }
+
+    @Test
+    public void latestRevocationWins() {
+        node1.revoke( 7L, 2000L);
+        node2.revoke( 7L, 1000L);
+
+        node2.refresh();
+        assertEquals( 2000L, node2.revokedAt( 7L));
+        assertEquals( 0L, node2.revokedAt( 8L));
+    }
+
+    @Test
+    public void revocationsAreReadAtStartup() {
+        node1.revoke( 7L, 1000L);
+
+        assertEquals( 1000L, store().revokedAt( 7L));
+    }
+
+    @Test
+    public void evictBeforeForgetsExpiredRevocations() {
+        node1.revoke( 7L, 1000L);
+        node1.revoke( 8L, 3000L);
+
+        node1.evictBefore( 2000L);
+        assertEquals( 0L, node1.revokedAt( 7L));
+        assertEquals( 3000L, node1.revokedAt( 8L));
+        DatabaseRevocationStore restarted = store();
+        assertEquals( 0L, restarted.revokedAt( 7L));
+        assertEquals( 3000L, restarted.revokedAt( 8L));
+    }
+
+    private DatabaseRevocationStore store() {
+        DatabaseRevocationStore result = new DatabaseRevocationStore();
+        result.setSessionRevocationRepository( sessionRevocationRepository);
+        result.setTransactionManager( transactionManager);
+        result.load();
+        return result;
+    }
+}
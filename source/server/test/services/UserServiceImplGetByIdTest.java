@@ -0,0 +1,73 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.config.CacheConfig;
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.dto.UserDTO;
+import com.fujitsu.digital.repositories.UserRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * getById() with a known version: a user cached here before a change made on another node must not be served.
+ */
+public class UserServiceImplGetByIdTest {
+
+    private static final Long USER_OID = 7L;
+
+    private UserServiceImpl userService;
+    private UserRepository userRepository;
+    private CacheManager cacheManager;
+
+    @Before
+    public void setUp() {
+        User user = new User();
+        user.setOid( USER_OID);
+        user.setVersion( 5L);
+        userRepository = mock( UserRepository.class);
+        when( userRepository.findById( USER_OID)).thenReturn( Optional.of( user));
+
+        UserMapper userMapper = mock( UserMapper.class);
+        when( userMapper.toDTO( user)).thenAnswer( invocation -> dto( 5L));
+        when( userMapper.copy( any( UserDTO.class))).thenAnswer( invocation -> invocation.getArgument( 0));
+
+        cacheManager = new ConcurrentMapCacheManager( CacheConfig.USERS);
+        userService = new UserServiceImpl();
+        userService.setUserRepository( userRepository);
+        userService.setUserMapper( userMapper);
+        userService.setCacheManager( cacheManager);
+    }
+
+    @Test
+    public void reloadsUserCachedAtOlderVersion() {
+        cacheManager.getCache( CacheConfig.USERS).put( USER_OID, dto( 4L));
+
+        assertEquals( Long.valueOf( 5L), userService.getById( USER_OID, 5L).getVersion());
+        assertEquals( Long.valueOf( 5L), userService.getById( USER_OID).getVersion());
+    }
+
+    @Test
+    public void servesUserCachedAtCurrentVersion() {
+        cacheManager.getCache( CacheConfig.USERS).put( USER_OID, dto( 5L));
+
+        assertEquals( Long.valueOf( 5L), userService.getById( USER_OID, 5L).getVersion());
+        verify( userRepository, never()).findById( USER_OID);
+    }
+
+    private static UserDTO dto( Long version) {
+        UserDTO result = new UserDTO();
+        result.setOid( USER_OID);
+        result.setVersion( version);
+        return result;
+    }
+}
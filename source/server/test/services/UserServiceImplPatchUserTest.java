@@ -0,0 +1,119 @@
+package com.fujitsu.digital.services;
+
+import com.fujitsu.digital.domain.User;
+import com.fujitsu.digital.domain.dto.UserDTO;
+import com.fujitsu.digital.domain.dto.UserPatchDTO;
+import com.fujitsu.digital.repositories.UserRepository;
+import com.fujitsu.digital.security.PasswordHasher;
+import com.fujitsu.digital.security.SessionTokenService;
+import com.fujitsu.digital.security.UserProvider;
+import com.fujitsu.digital.utils.EmailTemplateNames;
+import com.fujitsu.digital.utils.ReadYourWrites;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A user changing their own password through patchUser(): allowed with the right current password, refused without.
+ */
+public class UserServiceImplPatchUserTest {
+
+    private static final Long USER_OID = 7L;
+
+    private UserServiceImpl userService;
+    private UserRepository userRepository;
+    private NotificationService notificationService;
+    private User user;
+    private UserDTO updated;
+
+    @Before
+    public void setUp() {
+        UserDTO currentUser = new UserDTO();
+        currentUser.setOid( USER_OID);
+        UserProvider userProvider = mock( UserProvider.class);
+        when( userProvider.getAuthenticatedUser()).thenReturn( currentUser);
+
+        PasswordHasher passwordHasher = mock( PasswordHasher.class);
+        when( passwordHasher.hash( anyString())).thenAnswer( invocation -> "hashed:" + invocation.getArgument( 0));
+
+        user = new User();
+        user.setOid( USER_OID);
+        user.setUsername( "first.last@example.com");
+        user.setEmailAddress( user.getUsername());
+        user.setPassword( "hashed:old-password");
+        user.setStatus( User.Status.ACTIVE);
+        user.setActive( User.USER_ACTIVE);
+        user.setVersion( 3L);
+        userRepository = mock( UserRepository.class);
+        when( userRepository.findById( USER_OID)).thenReturn( Optional.of( user));
+        when( userRepository.hasPassword( USER_OID, "hashed:old-password")).thenReturn( true);
+        when( userRepository.save( any( User.class))).thenAnswer( invocation -> invocation.getArgument( 0));
+
+        updated = new UserDTO();
+        UserMapper userMapper = mock( UserMapper.class);
+        when( userMapper.toDTO( user)).thenReturn( updated);
+
+        notificationService = mock( NotificationService.class);
+
+        userService = new UserServiceImpl();
+        userService.setUserProvider( userProvider);
+        userService.setPasswordHasher( passwordHasher);
+        userService.setUserRepository( userRepository);
+        userService.setUserMapper( userMapper);
+        userService.setNotificationService( notificationService);
+        userService.setSessionTokenService( mock( SessionTokenService.class));
+        userService.setReadYourWrites( mock( ReadYourWrites.class));
+        userService.setApplicationEventPublisher( mock( ApplicationEventPublisher.class));
+        userService.setTransactionManager( mock( PlatformTransactionManager.class));
+    }
+
+    @Test
+    public void changesOwnPasswordWithCurrentPassword() {
+        UserDTO result = userService.patchUser( USER_OID, passwordPatch( "old-password"));
+
+        assertSame( updated, result);
+        ArgumentCaptor<User> saved = ArgumentCaptor.forClass( User.class);
+        verify( userRepository).save( saved.capture());
+        // getPassword() never reveals the stored password
+        assertEquals( "hashed:new-password", ReflectionTestUtils.getField( saved.getValue(), "password"));
+        verify( userRepository).hasPassword( USER_OID, "hashed:old-password");
+        verify( notificationService).queue( eq( user.getEmailAddress()), anyString(), eq( EmailTemplateNames.USER_RESET));
+    }
+
+    @Test
+    public void refusesOwnPasswordChangeWithWrongCurrentPassword() {
+        try {
+            userService.patchUser( USER_OID, passwordPatch( "wrong-password"));
+            fail( "Expected AccessDeniedException");
+        }
+        catch ( AccessDeniedException e) {
+            assertEquals( "The current password is wrong", e.getMessage());
+        }
+        verify( userRepository, never()).save( any( User.class));
+    }
+
+    private static UserPatchDTO passwordPatch( String currentPassword) {
+        UserPatchDTO patchDTO = new UserPatchDTO();
+        patchDTO.setVersion( 3L);
+        patchDTO.setPassword( "new-password");
+        patchDTO.setCurrentPassword( currentPassword);
+        return patchDTO;
+    }
+}
@@ -0,0 +1,85 @@
+package com.fujitsu.digital.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of strings: a compact set that can say an element is definitely absent, or probably
+ *  present. Bits are set with compare-and-set, so adds and lookups never block one another, and an element is
+ *  visible to lookups as soon as its add returns.
+ *
+ * Each element is hashed once (64-bit FNV-1a, then a finalising mix), and its k bit positions derived from the two
+ *  halves of the hash by double hashing.
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter( long bitCount, int hashCount) {
+        this.bits = new AtomicLongArray( (int) ( ( bitCount + 63) >>> 6));
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * @param expectedElements The number of elements the filter is sized for.
+     * @param falsePositiveRate The desired probability of a false "probably present" once it holds that many.
+     */
+    public static BloomFilter create( long expectedElements, double falsePositiveRate) {
+        long n = Math.max( 1, expectedElements);
+        long bitCount = Math.max( 64, (long) Math.ceil( -n * Math.log( falsePositiveRate) / ( Math.log( 2) * Math.log( 2))));
+        int hashCount = Math.max( 1, (int) Math.round( (double) bitCount / n * Math.log( 2)));
+        return new BloomFilter( bitCount, hashCount);
+    }
+
+    public void put( String element) {
+        long hash = hash( element);
+        int h1 = (int) hash;
+        int h2 = (int) ( hash >>> 32);
+        for ( int i = 0; i < hashCount; i++) {
+            long bit = Integer.toUnsignedLong( h1 + i * h2) % bitCount;
+            int word = (int) ( bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get( word);
+                if ( ( current & mask) != 0) {
+                    break;
+                }
+            }
+            while ( !bits.compareAndSet( word, current, current | mask));
+        }
+    }
+
+    /**
+     * @return false if the element has definitely never been added; true if it probably has.
+     */
+    public boolean mightContain( String element) {
+        long hash = hash( element);
+        int h1 = (int) hash;
+        int h2 = (int) ( hash >>> 32);
+        for ( int i = 0; i < hashCount; i++) {
+            long bit = Integer.toUnsignedLong( h1 + i * h2) % bitCount;
+            if ( ( bits.get( (int) ( bit >>> 6)) & ( 1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash( String element) {
+        long hash = 0xcbf29ce484222325L;
+        for ( int i = 0; i < element.length(); i++) {
+            hash ^= element.charAt( i);
+            hash *= 0x100000001b3L;
+        }
+        // Spread FNV's weak low bits over the whole word (MurmurHash3's finaliser)
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
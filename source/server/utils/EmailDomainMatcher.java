@@ -0,0 +1,95 @@
+package com.fujitsu.digital.utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable, compiled form of the registration email matcher list. The matchers (e.g. "@fujitsu.com",
+ *  ".gov.uk") are compiled into a trie of their characters in reverse order, so that an address can be tested against
+ *  every matcher at once by walking it backwards from its last character. Matching therefore costs time proportional
+ *  to the length of the address, however many matchers there are.
+ *
+ * Matching has exactly the semantics of testing address.endsWith( matcher) for each matcher in turn.
+ */
+public final class EmailDomainMatcher {
+
+    private final Node root;
+
+    private EmailDomainMatcher( Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param matchers The suffixes to match against.
+     * @return A matcher for the given suffixes.
+     */
+    public static EmailDomainMatcher compile( List<String> matchers) {
+        Builder root = new Builder();
+        for ( String matcher : matchers) {
+            Builder node = root;
+            for ( int i = matcher.length() - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent( matcher.charAt( i), c -> new Builder());
+            }
+            node.terminal = true;
+        }
+        return new EmailDomainMatcher( root.build());
+    }
+
+    /**
+     * @param emailAddress An email address, already normalised in the same way as the matchers (e.g. lower case).
+     * @return true if the address ends with any of the matchers.
+     */
+    public boolean matches( String emailAddress) {
+        Node node = root;
+        for ( int i = emailAddress.length() - 1; i >= 0; i--) {
+            if ( node.terminal) {
+                return true;
+            }
+            node = node.child( emailAddress.charAt( i));
+            if ( node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+
+    private static final class Node {
+        private static final char[] NO_LABELS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // Child labels are sorted, for binary search, with children[i] reached by labels[i]
+        private final char[] labels;
+        private final Node[] children;
+        private final boolean terminal;
+
+        Node( char[] labels, Node[] children, boolean terminal) {
+            this.labels = labels.length > 0 ? labels : NO_LABELS;
+            this.children = children.length > 0 ? children : NO_CHILDREN;
+            this.terminal = terminal;
+        }
+
+        Node child( char label) {
+            int index = Arrays.binarySearch( labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    private static final class Builder {
+        private final Map<Character, Builder> children = new TreeMap<>();
+        private boolean terminal;
+
+        Node build() {
+            char[] labels = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for ( Map.Entry<Character, Builder> child : children.entrySet()) {
+                labels[i] = child.getKey();
+                nodes[i] = child.getValue().build();
+                i++;
+            }
+            return new Node( labels, nodes, terminal);
+        }
+    }
+}
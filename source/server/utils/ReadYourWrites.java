@@ -0,0 +1,101 @@
+package com.fujitsu.digital.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers who has written recently, so that their reads can be kept on the primary database until the replicas
+ *  have (very probably) caught up with their writes. Writers are identified by the authenticated principal's name;
+ *  anonymous writers (e.g. registrations) share a single entry.
+ *
+ * Writes are only remembered on the node that made them, so this is best effort: a principal's next request may be
+ *  served by another node, from a replica that hasn't caught up. Reads that must never miss a committed change (the
+ *  change feed, and the in-memory indexes that follow it) are instead pinned to the primary with onPrimary().
+ */
+@Component
+public class ReadYourWrites {
+
+    private static final String ANONYMOUS = "";
+
+    private final ConcurrentMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+
+    @Value("${ip.datasource.read-your-writes-ms:2000}")
+    private long windowMillis;
+
+    /**
+     * Records that the current principal has written. The window is restarted when the transaction commits, since
+     *  replication lag is measured from then.
+     */
+    public void markWrite() {
+        String writer = currentWriter();
+        lastWrites.put( writer, System.currentTimeMillis());
+        if ( TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    lastWrites.put( writer, System.currentTimeMillis());
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true if the current principal wrote within the read-your-writes window.
+     */
+    public boolean isRecentWriter() {
+        Long lastWrite = lastWrites.get( currentWriter());
+        return lastWrite != null && System.currentTimeMillis() - lastWrite < windowMillis;
+    }
+
+    /**
+     * Runs the work with every connection it opens routed to the primary, whether or not its transactions are
+     *  read-only.
+     */
+    public <T> T onPrimary( Supplier<T> work) {
+        boolean pinned = isPinnedToPrimary();
+        pinnedToPrimary.set( Boolean.TRUE);
+        try {
+            return work.get();
+        }
+        finally {
+            if ( !pinned) {
+                pinnedToPrimary.remove();
+            }
+        }
+    }
+
+    public void runOnPrimary( Runnable work) {
+        onPrimary( () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return true if the current thread is running work passed to onPrimary().
+     */
+    public boolean isPinnedToPrimary() {
+        return pinnedToPrimary.get() != null;
+    }
+
+    @Scheduled(fixedDelayString = "${ip.datasource.read-your-writes-purge-ms:60000}")
+    public void purge() {
+        long oldest = System.currentTimeMillis() - windowMillis;
+        lastWrites.values().removeIf( lastWrite -> lastWrite < oldest);
+    }
+
+    private static String currentWriter() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getName() != null ? authentication.getName() : ANONYMOUS;
+    }
+}